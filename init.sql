@@ -18,6 +18,8 @@ CREATE TABLE ship
     speed    DOUBLE      NULL,
     crewSize INT(4)      NULL,
     rating   DOUBLE      NULL,
+    version  BIGINT(20)  NOT NULL DEFAULT 0,
+    changeSeq BIGINT(20) NOT NULL DEFAULT 0,
     PRIMARY KEY (id)
 )
     ENGINE = InnoDB
@@ -64,3 +66,33 @@ values ('Orion III', 'Mars', 'MERCHANT', '2995-01-01', true, 0.82, 617, 1.31)
      , ('Nostromo', 'Saturn', 'MERCHANT', '2991-01-01', true, 0.31, 1967, 0.43)
      , ('Tardis', 'Jupiter', 'MERCHANT', '3016-01-01', false, 0.86, 4871, 17.20)
      , ('Star Destroyer', 'Mercury', 'MILITARY', '3017-01-01', false, 0.92, 4880, 24.53);
+
+DROP TABLE IF EXISTS ship_id_sequence;
+
+CREATE TABLE ship_id_sequence
+(
+    name     VARCHAR(50) NOT NULL,
+    next_val BIGINT(20)  NOT NULL,
+    PRIMARY KEY (name)
+);
+
+INSERT INTO ship_id_sequence(name, next_val)
+SELECT 'ship', MAX(id) + 1
+FROM ship;
+
+CREATE INDEX ship_change_seq ON ship (changeSeq, id);
+
+-- Последовательность изменений флота: строка блокируется изменяющей транзакцией до коммита
+INSERT INTO ship_id_sequence(name, next_val)
+VALUES ('change', 0);
+
+DROP TABLE IF EXISTS ship_tombstone;
+
+CREATE TABLE ship_tombstone
+(
+    id        BIGINT(20) NOT NULL,
+    changeSeq BIGINT(20) NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX ship_tombstone_change_seq ON ship_tombstone (changeSeq, id);
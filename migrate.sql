@@ -0,0 +1,58 @@
+-- Обновление существующей схемы cosmoport без пересоздания таблиц (init.sql удаляет данные).
+-- Каждый шаг можно выполнять повторно.
+
+USE cosmoport;
+
+-- Id кораблей выдаются блоками из ship_id_sequence (TableGenerator), следующий блок начинается после MAX(id)
+CREATE TABLE IF NOT EXISTS ship_id_sequence
+(
+    name     VARCHAR(50) NOT NULL,
+    next_val BIGINT(20)  NOT NULL,
+    PRIMARY KEY (name)
+);
+
+INSERT INTO ship_id_sequence(name, next_val)
+SELECT 'ship', COALESCE(MAX(id), 0) + 1
+FROM ship
+ON DUPLICATE KEY UPDATE next_val = GREATEST(next_val, VALUES(next_val));
+
+-- Версия корабля для ETag и If-Match. В MySQL нет ADD COLUMN IF NOT EXISTS, поэтому столбец
+-- добавляется подготовленным запросом, только если его еще нет
+SET @ddl = IF((SELECT COUNT(*)
+               FROM information_schema.COLUMNS
+               WHERE TABLE_SCHEMA = 'cosmoport' AND TABLE_NAME = 'ship' AND COLUMN_NAME = 'version') = 0,
+              'ALTER TABLE ship ADD COLUMN version BIGINT(20) NOT NULL DEFAULT 0',
+              'DO 0');
+PREPARE ddl FROM @ddl;
+EXECUTE ddl;
+DEALLOCATE PREPARE ddl;
+
+-- Последовательность изменений флота: номер изменения каждого корабля, счетчик и надгробия удаленных
+SET @ddl = IF((SELECT COUNT(*)
+               FROM information_schema.COLUMNS
+               WHERE TABLE_SCHEMA = 'cosmoport' AND TABLE_NAME = 'ship' AND COLUMN_NAME = 'changeSeq') = 0,
+              'ALTER TABLE ship ADD COLUMN changeSeq BIGINT(20) NOT NULL DEFAULT 0',
+              'DO 0');
+PREPARE ddl FROM @ddl;
+EXECUTE ddl;
+DEALLOCATE PREPARE ddl;
+
+SET @ddl = IF((SELECT COUNT(*)
+               FROM information_schema.STATISTICS
+               WHERE TABLE_SCHEMA = 'cosmoport' AND TABLE_NAME = 'ship' AND INDEX_NAME = 'ship_change_seq') = 0,
+              'CREATE INDEX ship_change_seq ON ship (changeSeq, id)',
+              'DO 0');
+PREPARE ddl FROM @ddl;
+EXECUTE ddl;
+DEALLOCATE PREPARE ddl;
+
+INSERT IGNORE INTO ship_id_sequence(name, next_val)
+VALUES ('change', 0);
+
+CREATE TABLE IF NOT EXISTS ship_tombstone
+(
+    id        BIGINT(20) NOT NULL,
+    changeSeq BIGINT(20) NOT NULL,
+    PRIMARY KEY (id),
+    INDEX ship_tombstone_change_seq (changeSeq, id)
+);
@@ -1,23 +1,48 @@
 package com.space.config;
 
+import com.space.model.Ship;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.ehcache.config.CacheConfiguration;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ConfigurationBuilder;
+import org.ehcache.config.builders.ExpiryPolicyBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableMBeanExport;
 import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
 import org.springframework.dao.annotation.PersistenceExceptionTranslationPostProcessor;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jmx.support.RegistrationPolicy;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.JpaVendorAdapter;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.cache.CacheManager;
+import javax.cache.Caching;
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
-import java.util.Properties;
+import java.net.URI;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType.H2;
 
@@ -25,8 +50,42 @@ import static org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType.
 @EnableTransactionManagement
 @ComponentScan("com.space.service")
 @EnableJpaRepositories(basePackages = "com.space.repository")
+@EnableMBeanExport(registration = RegistrationPolicy.IGNORE_EXISTING)
 public class AppConfig {
 
+    private static final int QUERY_THREADS = 4;
+    private static final int QUERY_QUEUE_SIZE = 100;
+
+    // Количество вставок и обновлений, отправляемых в БД одним пакетом JDBC
+    public static final int JDBC_BATCH_SIZE = 50;
+
+    // Настройки кэша второго уровня для кораблей по умолчанию, переопределяются свойствами
+    // ship.cache.size (количество кораблей) и ship.cache.ttl (мс)
+    private static final long SHIP_CACHE_SIZE = 10_000;
+    private static final long SHIP_CACHE_TTL = TimeUnit.MINUTES.toMillis(10);
+
+    // Настройки пула соединений по умолчанию, на узле переопределяются системными свойствами
+    // или переменными окружения с теми же именами. В пуле основной БД нужно не меньше двух соединений:
+    // генератор id кораблей берет блок id на втором соединении (см. ShipInsertPermits)
+    private static final int POOL_MIN_IDLE = 2;
+    public static final int POOL_MAX_SIZE = 10;
+    public static final long POOL_CONNECTION_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+    private static final long POOL_LEAK_DETECTION_THRESHOLD = TimeUnit.SECONDS.toMillis(30);
+    private static final int PREPARED_STATEMENT_CACHE_SIZE = 250;
+
+    private static final String MYSQL_URL = "jdbc:mysql://localhost:3306/cosmoport?serverTimezone=UTC" +
+            "&useCursorFetch=true&rewriteBatchedStatements=true";
+
+    // Асинхронные запросы чтения: очередь на поток пула и таймаут запроса (свойство rest.timeout)
+    private static final int REQUEST_QUEUE_PER_THREAD = 20;
+    public static final long REQUEST_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+    // Наибольшее отставание реплик: столько после своей записи клиент читает с основной БД
+    private static final long REPLICA_MAX_LAG = TimeUnit.SECONDS.toMillis(5);
+
+    @Autowired
+    private Environment environment;
+
     @Bean
     public LocalContainerEntityManagerFactoryBean entityManagerFactory() {
         LocalContainerEntityManagerFactoryBean em = new LocalContainerEntityManagerFactoryBean();
@@ -35,33 +94,96 @@ public class AppConfig {
 
         JpaVendorAdapter vendorAdapter = new HibernateJpaVendorAdapter();
         em.setJpaVendorAdapter(vendorAdapter);
+        em.setJpaDialect(new ReplicaAwareJpaDialect(routingDataSource()));
         em.setJpaProperties(additionalProperties());
 
         return em;
     }
 
-    @Profile("prod")
+    /**
+     * Источник данных приложения: соединение берется при первом запросе к БД, когда уже известно,
+     * только ли для чтения транзакция, и по этому признаку выбирается основная БД или реплика
+     */
     @Bean
     public DataSource dataSource() {
-        DriverManagerDataSource dataSource = new DriverManagerDataSource();
-        dataSource.setDriverClassName("com.mysql.cj.jdbc.Driver");
-        dataSource.setUrl("jdbc:mysql://localhost:3306/cosmoport?serverTimezone=UTC");
-        dataSource.setUsername("root");
-        dataSource.setPassword("root");
-        return dataSource;
+        return new LazyConnectionDataSourceProxy(routingDataSource());
+    }
+
+    @Bean(destroyMethod = "close")
+    public ReplicaRoutingDataSource routingDataSource() {
+        ReplicaRoutingDataSource.Selection selection = environment.getProperty("db.replica.selection",
+                ReplicaRoutingDataSource.Selection.class, ReplicaRoutingDataSource.Selection.ROUND_ROBIN);
+        long maxLag = environment.getProperty("db.replica.maxLag", Long.class, REPLICA_MAX_LAG);
+        return new ReplicaRoutingDataSource(primaryDataSource(), replicaDataSources(), selection, maxLag);
+    }
+
+    @Profile("prod")
+    @Bean(destroyMethod = "close")
+    public DataSource primaryDataSource() {
+        return new HikariDataSource(primaryPool(mysqlConfig(environment.getProperty("db.url", MYSQL_URL))));
+    }
+
+    /**
+     * Реплики основной БД: адреса перечисляются через запятую в свойстве db.replica.urls,
+     * без него все запросы идут на основную БД
+     */
+    @Profile("prod")
+    @Bean
+    public List<DataSource> replicaDataSources() {
+        List<DataSource> replicas = new ArrayList<>();
+        for (String url : environment.getProperty("db.replica.urls", String[].class, new String[0]))
+            replicas.add(new HikariDataSource(replicaPool(mysqlConfig(url.trim()), replicas.size())));
+        return replicas;
     }
 
     @Profile("dev")
-    @Bean(name = "dataSource")
-    public DataSource dataSourceForTests() {
+    @Bean(name = "primaryDataSource", destroyMethod = "close")
+    public DataSource primaryDataSourceForTests() {
+        return new HikariDataSource(primaryPool(h2Config()));
+    }
 
-        return new EmbeddedDatabaseBuilder()
-                .generateUniqueName(true)
-                .setType(H2)
-                .setScriptEncoding("UTF-8")
-                .ignoreFailedDrops(true)
-                .addScript("test.sql")
+    @Profile("dev & !replica")
+    @Bean(name = "replicaDataSources")
+    public List<DataSource> noReplicasForTests() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Отдельная БД H2 в роли реплики; изменения основной БД на нее не переносятся
+     */
+    @Profile("dev & replica")
+    @Bean(name = "replicaDataSources")
+    public List<DataSource> replicaDataSourcesForTests() {
+        return Collections.singletonList(new HikariDataSource(replicaPool(h2Config(), 0)));
+    }
+
+    /**
+     * Метрики пула соединений, доступные через JMX
+     */
+    @Bean
+    public ConnectionPoolMetrics connectionPoolMetrics() {
+        return new ConnectionPoolMetrics();
+    }
+
+    /**
+     * Менеджер локального кэша второго уровня Hibernate. У каждого контекста свой менеджер,
+     * поэтому кэши разных контекстов (например, в тестах) не пересекаются.
+     */
+    @Bean(destroyMethod = "close")
+    public CacheManager entityCacheManager() {
+        long size = environment.getProperty("ship.cache.size", Long.class, SHIP_CACHE_SIZE);
+        long ttl = environment.getProperty("ship.cache.ttl", Long.class, SHIP_CACHE_TTL);
+        CacheConfiguration<Object, Object> shipCache = CacheConfigurationBuilder
+                .newCacheConfigurationBuilder(Object.class, Object.class, ResourcePoolsBuilder.heap(size))
+                .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofMillis(ttl)))
                 .build();
+        org.ehcache.config.Configuration configuration = ConfigurationBuilder.newConfigurationBuilder()
+                .withCache(Ship.class.getName(), shipCache)
+                .build();
+
+        EhcacheCachingProvider provider =
+                (EhcacheCachingProvider) Caching.getCachingProvider(EhcacheCachingProvider.class.getName());
+        return provider.getCacheManager(URI.create("urn:cosmoport:" + UUID.randomUUID()), configuration);
     }
 
     @Bean
@@ -72,15 +194,133 @@ public class AppConfig {
         return transactionManager;
     }
 
+    /**
+     * Пул потоков для параллельного выполнения запросов к БД (например, страницы и количества).
+     * Очередь ограничена: когда она заполнена, задачу выполняет вызвавший поток, то есть страница
+     * и количество читаются последовательно, как до появления пула
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService queryExecutor() {
+        int queueSize = environment.getProperty("query.executor.queueSize", Integer.class, QUERY_QUEUE_SIZE);
+        ThreadFactory threadFactory = VirtualThreads.isEnabled(environment)
+                ? VirtualThreads.factory("query-") : Executors.defaultThreadFactory();
+        return new ThreadPoolExecutor(QUERY_THREADS, QUERY_THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Пул потоков асинхронных конечных точек чтения. По умолчанию потоков столько, сколько соединений
+     * остается в пуле за вычетом потоков queryExecutor, которым эти запросы передают подсчет количества.
+     * В режиме threads.virtual каждая задача получает новый виртуальный поток, а одновременно выполняется
+     * по-прежнему не больше задач, чем потоков в обычном режиме
+     */
+    @Bean(destroyMethod = "shutdown")
+    public RequestExecutor requestExecutor() {
+        int poolSize = environment.getProperty("db.pool.maxSize", Integer.class, POOL_MAX_SIZE);
+        int threads = environment.getProperty("rest.executor.threads", Integer.class,
+                Math.max(1, poolSize - QUERY_THREADS));
+        int queueSize = environment.getProperty("rest.executor.queueSize", Integer.class,
+                threads * REQUEST_QUEUE_PER_THREAD);
+        long timeout = environment.getProperty("rest.timeout", Long.class, REQUEST_TIMEOUT);
+        if (VirtualThreads.isEnabled(environment)) {
+            VirtualThreads.checkPinning(poolSize * (1 + routingDataSource().getReplicaCount()));
+            return new RequestExecutor(threads, queueSize, timeout, VirtualThreads.perTaskExecutor("request-"));
+        }
+        return new RequestExecutor(threads, queueSize, timeout);
+    }
+
+    @Bean
+    public TransactionTemplate transactionTemplate(PlatformTransactionManager transactionManager) {
+        return new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Шаблон транзакций только для чтения: Hibernate не сбрасывает изменения (FlushMode.MANUAL)
+     * и не проверяет загруженные объекты на изменения
+     */
+    @Bean
+    public TransactionTemplate readOnlyTransaction(PlatformTransactionManager transactionManager) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        return transactionTemplate;
+    }
+
     @Bean
     public PersistenceExceptionTranslationPostProcessor exceptionTranslation() {
         return new PersistenceExceptionTranslationPostProcessor();
     }
 
+    private HikariConfig mysqlConfig(String url) {
+        HikariConfig config = poolConfig();
+        config.setDriverClassName("com.mysql.cj.jdbc.Driver");
+        config.setJdbcUrl(url);
+        config.setUsername("root");
+        config.setPassword("root");
+
+        // Драйвер MySQL кэширует подготовленные запросы на каждом соединении пула
+        config.addDataSourceProperty("cachePrepStmts", "true");
+        config.addDataSourceProperty("useServerPrepStmts", "true");
+        config.addDataSourceProperty("prepStmtCacheSize",
+                environment.getProperty("db.prepStmtCacheSize", Integer.class, PREPARED_STATEMENT_CACHE_SIZE));
+        config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        return config;
+    }
+
+    private HikariConfig h2Config() {
+        HikariConfig config = poolConfig();
+        config.setDataSource(new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(H2)
+                .setScriptEncoding("UTF-8")
+                .ignoreFailedDrops(true)
+                .addScript("test.sql")
+                .build());
+        return config;
+    }
+
+    // Метрики через JMX публикуются для пула основной БД
+    private HikariConfig primaryPool(HikariConfig config) {
+        config.setPoolName("primary");
+        config.setMetricsTrackerFactory(connectionPoolMetrics());
+        return config;
+    }
+
+    private HikariConfig replicaPool(HikariConfig config, int index) {
+        config.setPoolName("replica-" + index);
+        return config;
+    }
+
+    private HikariConfig poolConfig() {
+        HikariConfig config = new HikariConfig();
+        config.setMinimumIdle(environment.getProperty("db.pool.minIdle", Integer.class, POOL_MIN_IDLE));
+        config.setMaximumPoolSize(environment.getProperty("db.pool.maxSize", Integer.class, POOL_MAX_SIZE));
+        config.setConnectionTimeout(environment.getProperty("db.pool.connectionTimeout", Long.class,
+                POOL_CONNECTION_TIMEOUT));
+        // Соединение, не возвращенное в пул дольше порога, попадает в лог со стеком места получения
+        config.setLeakDetectionThreshold(environment.getProperty("db.pool.leakDetectionThreshold", Long.class,
+                POOL_LEAK_DETECTION_THRESHOLD));
+        return config;
+    }
+
     private Properties additionalProperties() {
         Properties properties = new Properties();
         properties.setProperty("hibernate.dialect", "org.hibernate.dialect.MySQL5Dialect");
 
+        properties.setProperty("hibernate.cache.use_second_level_cache", "true");
+        properties.setProperty("hibernate.cache.region.factory_class", "jcache");
+        properties.setProperty("javax.persistence.sharedCache.mode", "ENABLE_SELECTIVE");
+        properties.put(ConfigSettings.CACHE_MANAGER, entityCacheManager());
+        properties.setProperty("hibernate.generate_statistics", "true");
+
+        properties.setProperty("hibernate.jdbc.batch_size", String.valueOf(JDBC_BATCH_SIZE));
+        properties.setProperty("hibernate.order_inserts", "true");
+        properties.setProperty("hibernate.order_updates", "true");
+        // Значение в таблице ship_id_sequence - первый id следующего блока
+        properties.setProperty("hibernate.id.optimizer.pooled.preferred", "pooled-lo");
+        // Списки id в IN дополняются до степени двойки, чтобы число разных текстов SQL и планов не росло
+        // с каждой новой длиной списка кандидатов триграммного индекса
+        properties.setProperty("hibernate.query.in_clause_parameter_padding", "true");
+
         return properties;
     }
 }
\ No newline at end of file
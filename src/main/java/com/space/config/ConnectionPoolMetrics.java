@@ -0,0 +1,123 @@
+package com.space.config;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Метрики пула соединений с основной БД, доступные через JMX: занятые и свободные соединения,
+ * потоки в ожидании соединения, время ожидания и использования соединения, таймауты.
+ * По ним подбирается размер пула для узла.
+ */
+@ManagedResource(objectName = "com.space:type=ConnectionPool")
+public class ConnectionPoolMetrics implements MetricsTrackerFactory {
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder usages = new LongAdder();
+    private final LongAdder usageMillis = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder created = new LongAdder();
+
+    private volatile PoolStats poolStats;
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolStats = poolStats;
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+                created.increment();
+            }
+
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquisitions.increment();
+                waitNanos.add(elapsedAcquiredNanos);
+                maxWaitNanos.accumulate(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                usages.increment();
+                usageMillis.add(elapsedBorrowedMillis);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.increment();
+            }
+        };
+    }
+
+    @ManagedAttribute
+    public int getActiveConnections() {
+        return poolStats == null ? 0 : poolStats.getActiveConnections();
+    }
+
+    @ManagedAttribute
+    public int getIdleConnections() {
+        return poolStats == null ? 0 : poolStats.getIdleConnections();
+    }
+
+    @ManagedAttribute
+    public int getTotalConnections() {
+        return poolStats == null ? 0 : poolStats.getTotalConnections();
+    }
+
+    @ManagedAttribute
+    public int getPendingThreads() {
+        return poolStats == null ? 0 : poolStats.getPendingThreads();
+    }
+
+    @ManagedAttribute
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    @ManagedAttribute
+    public double getAverageWaitMillis() {
+        long count = acquisitions.sum();
+        return count == 0 ? 0 : (double) waitNanos.sum() / count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @ManagedAttribute
+    public double getMaxWaitMillis() {
+        return (double) maxWaitNanos.get() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @ManagedAttribute
+    public double getAverageUsageMillis() {
+        long count = usages.sum();
+        return count == 0 ? 0 : (double) usageMillis.sum() / count;
+    }
+
+    @ManagedAttribute
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    @ManagedAttribute
+    public long getConnectionsCreated() {
+        return created.sum();
+    }
+
+    @ManagedOperation
+    public void reset() {
+        acquisitions.reset();
+        waitNanos.reset();
+        maxWaitNanos.reset();
+        usages.reset();
+        usageMillis.reset();
+        timeouts.reset();
+        created.reset();
+    }
+}
@@ -0,0 +1,125 @@
+package com.space.config;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.WebResourceRoot;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.webresources.StandardRoot;
+import org.apache.coyote.http11.Http11NioProtocol;
+import org.apache.coyote.http2.Http2Protocol;
+import org.apache.jasper.servlet.JasperInitializer;
+import org.apache.tomcat.util.net.SSLHostConfig;
+import org.apache.tomcat.util.net.SSLHostConfigCertificate;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * Запуск приложения исполняемым jar со встроенным Tomcat вместо развертывания war.
+ * Приложение поднимается тем же {@link MyWebAppInit} с теми же AppConfig и WebConfig.
+ * Соединения обслуживает NIO коннектор с HTTP/2 (h2c без TLS, h2 с TLS) и сжатием gzip ответов
+ * больше порога. Настройки берутся из системных свойств и переменных окружения:
+ * server.port, server.threads.max, server.threads.minSpare, server.acceptCount, server.maxConnections,
+ * server.compression.minSize, server.ssl.keyStore и server.ssl.keyStorePassword;
+ * threads.virtual=true включает виртуальные потоки (см. {@link VirtualThreads}).
+ * В отдельном Tomcat тот же режим включается атрибутом useVirtualThreads="true" коннектора.
+ * Сборка: mvn -Pembedded package, запуск: java -jar target/cosmoport-1.0-SNAPSHOT-embedded.jar
+ */
+public class EmbeddedServer {
+
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_MAX_THREADS = 200;
+    private static final int DEFAULT_MIN_SPARE_THREADS = 10;
+    private static final int DEFAULT_ACCEPT_COUNT = 100;
+    // Простаивающие подписки на /rest/ships/stream держат соединения, но не потоки
+    private static final int DEFAULT_MAX_CONNECTIONS = 10000;
+    private static final int DEFAULT_COMPRESSION_MIN_SIZE = 2048;
+
+    // Поток событий не сжимается: gzip буферизует вывод и задерживал бы события
+    private static final String COMPRESSIBLE_MIME_TYPES =
+            "application/json,text/html,text/css,text/plain,application/javascript,text/javascript";
+
+    // Каталог src/main/webapp внутри исполняемого jar
+    private static final String WEBAPP_IN_JAR = "/webapp";
+
+    public static void main(String[] args) throws Exception {
+        Environment environment = new StandardEnvironment();
+
+        Tomcat tomcat = new Tomcat();
+        tomcat.setBaseDir(Files.createTempDirectory("cosmoport-tomcat").toString());
+        tomcat.setConnector(connector(environment));
+
+        Context context = tomcat.addContext("", new File(tomcat.getServer().getCatalinaBase(), "webapp").getPath());
+        new File(context.getDocBase()).mkdirs();
+        context.setResources(webResources(context));
+        // Страница index.jsp и ресурсы обслуживаются так же, как в контейнере: сервлетами JSP и по умолчанию
+        Tomcat.initWebappDefaults(context);
+        context.addServletContainerInitializer(new JasperInitializer(), null);
+        context.addServletContainerInitializer((classes, servletContext) ->
+                new MyWebAppInit().onStartup(servletContext), null);
+
+        tomcat.start();
+        tomcat.getServer().await();
+    }
+
+    private static Connector connector(Environment environment) {
+        Connector connector = new Connector(Http11NioProtocol.class.getName());
+        connector.setPort(environment.getProperty("server.port", Integer.class, DEFAULT_PORT));
+        connector.setURIEncoding("UTF-8");
+
+        int compressionMinSize = environment.getProperty("server.compression.minSize", Integer.class,
+                DEFAULT_COMPRESSION_MIN_SIZE);
+        Http11NioProtocol protocol = (Http11NioProtocol) connector.getProtocolHandler();
+        protocol.setMaxThreads(environment.getProperty("server.threads.max", Integer.class, DEFAULT_MAX_THREADS));
+        protocol.setMinSpareThreads(environment.getProperty("server.threads.minSpare", Integer.class,
+                DEFAULT_MIN_SPARE_THREADS));
+        protocol.setAcceptCount(environment.getProperty("server.acceptCount", Integer.class, DEFAULT_ACCEPT_COUNT));
+        protocol.setMaxConnections(environment.getProperty("server.maxConnections", Integer.class,
+                DEFAULT_MAX_CONNECTIONS));
+        // Каждый запрос в своем виртуальном потоке, server.threads.* тогда не действуют
+        if (VirtualThreads.isEnabled(environment))
+            connector.setProperty("useVirtualThreads", "true");
+        protocol.setCompression("on");
+        protocol.setCompressionMinSize(compressionMinSize);
+        protocol.setCompressibleMimeType(COMPRESSIBLE_MIME_TYPES);
+
+        // HTTP/2 работает на том же порту и тех же потоках; сжатие у него настраивается отдельно
+        Http2Protocol http2 = new Http2Protocol();
+        http2.setCompression("on");
+        http2.setCompressionMinSize(compressionMinSize);
+        http2.setCompressibleMimeType(COMPRESSIBLE_MIME_TYPES);
+        connector.addUpgradeProtocol(http2);
+
+        String keyStore = environment.getProperty("server.ssl.keyStore");
+        if (keyStore != null) {
+            SSLHostConfig ssl = new SSLHostConfig();
+            SSLHostConfigCertificate certificate = new SSLHostConfigCertificate(ssl,
+                    SSLHostConfigCertificate.Type.UNDEFINED);
+            certificate.setCertificateKeystoreFile(new File(keyStore).getAbsolutePath());
+            certificate.setCertificateKeystorePassword(environment.getProperty("server.ssl.keyStorePassword"));
+            ssl.addCertificate(certificate);
+            connector.addSslHostConfig(ssl);
+            connector.setSecure(true);
+            connector.setScheme("https");
+            protocol.setSSLEnabled(true);
+        }
+        return connector;
+    }
+
+    /**
+     * Содержимое src/main/webapp: из исполняемого jar или, при запуске из каталога классов, из исходников
+     */
+    private static WebResourceRoot webResources(Context context) throws Exception {
+        WebResourceRoot root = new StandardRoot(context);
+        File source = new File(EmbeddedServer.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        if (source.isFile())
+            root.createWebResourceSet(WebResourceRoot.ResourceSetType.PRE, "/", source.getAbsolutePath(),
+                    null, WEBAPP_IN_JAR);
+        else
+            root.createWebResourceSet(WebResourceRoot.ResourceSetType.PRE, "/",
+                    new File("src/main/webapp").getAbsolutePath(), null, "/");
+        return root;
+    }
+}
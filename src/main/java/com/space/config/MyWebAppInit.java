@@ -1,7 +1,9 @@
 package com.space.config;
 
+import org.springframework.web.servlet.resource.ResourceUrlEncodingFilter;
 import org.springframework.web.servlet.support.AbstractAnnotationConfigDispatcherServletInitializer;
 
+import javax.servlet.Filter;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 
@@ -28,4 +30,10 @@ public class MyWebAppInit extends AbstractAnnotationConfigDispatcherServletIniti
         return new String[]{"/"};
     }
 
+    // Подставляет в адреса ресурсов, выводимые через c:url, хеш их содержимого
+    @Override
+    protected Filter[] getServletFilters() {
+        return new Filter[]{new ResourceUrlEncodingFilter()};
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+package com.space.config;
+
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Обеспечивает клиенту чтение собственных записей при чтении с реплик.
+ * Изменяющий запрос выдает клиенту cookie с моментом, до которого реплики могут еще не содержать изменение;
+ * пока этот момент не наступил, запросы клиента читают с основной БД.
+ * Состояние хранится у клиента, поэтому работает и при нескольких узлах приложения.
+ */
+public class ReadYourWritesInterceptor implements AsyncHandlerInterceptor {
+
+    public static final String PRIMARY_UNTIL_COOKIE = "primaryUntil";
+
+    private final long windowMillis;
+
+    public ReadYourWritesInterceptor(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (windowMillis <= 0)
+            return true;
+
+        long now = System.currentTimeMillis();
+        if (isWrite(request)) {
+            Cookie cookie = new Cookie(PRIMARY_UNTIL_COOKIE, String.valueOf(now + windowMillis));
+            cookie.setPath("/");
+            cookie.setMaxAge((int) TimeUnit.MILLISECONDS.toSeconds(windowMillis) + 1);
+            cookie.setHttpOnly(true);
+            response.addCookie(cookie);
+            ReplicaRoutingDataSource.requirePrimary(true);
+        } else {
+            // Значения дальше окна не принимаются, чтобы клиент не мог навсегда закрепиться за основной БД
+            long primaryUntil = primaryUntil(request);
+            if (primaryUntil > now && primaryUntil <= now + windowMillis)
+                ReplicaRoutingDataSource.requirePrimary(true);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        ReplicaRoutingDataSource.requirePrimary(false);
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        // Асинхронный запрос (подписка на изменения) освобождает поток без вызова afterCompletion
+        ReplicaRoutingDataSource.requirePrimary(false);
+    }
+
+    private static boolean isWrite(HttpServletRequest request) {
+        String method = request.getMethod();
+        return !"GET".equals(method) && !"HEAD".equals(method) && !"OPTIONS".equals(method);
+    }
+
+    private static long primaryUntil(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null)
+            return 0;
+        for (Cookie cookie : cookies) {
+            if (PRIMARY_UNTIL_COOKIE.equals(cookie.getName())) {
+                try {
+                    return Long.parseLong(cookie.getValue());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+}
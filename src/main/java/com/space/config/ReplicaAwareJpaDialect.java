@@ -0,0 +1,65 @@
+package com.space.config;
+
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.transaction.TransactionDefinition;
+
+import javax.persistence.CacheStoreMode;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import java.sql.SQLException;
+
+/**
+ * Диалект JPA, запрещающий транзакциям, которые читают с реплики, пополнять кэш второго уровня.
+ * Реплика отстает от основной БД, и прочитанная с нее прежняя версия корабля попала бы в общий кэш,
+ * откуда ее получил бы и клиент, читающий свои записи с основной БД.
+ * Такие транзакции только читают кэш (CacheStoreMode.BYPASS), а пополняют его чтения с основной БД
+ */
+public class ReplicaAwareJpaDialect extends HibernateJpaDialect {
+
+    // Режим задается свойством EntityManager, а не CacheMode сессии: find в Hibernate вычисляет
+    // CacheMode заново из этого свойства
+    private static final String STORE_MODE = "javax.persistence.cache.storeMode";
+
+    private final ReplicaRoutingDataSource routingDataSource;
+
+    public ReplicaAwareJpaDialect(ReplicaRoutingDataSource routingDataSource) {
+        this.routingDataSource = routingDataSource;
+    }
+
+    @Override
+    public Object beginTransaction(EntityManager entityManager, TransactionDefinition definition)
+            throws PersistenceException, SQLException {
+        Object transactionData = super.beginTransaction(entityManager, definition);
+        if (!routingDataSource.routesToReplica(definition.isReadOnly()))
+            return transactionData;
+
+        Object previousStoreMode = entityManager.getProperties().getOrDefault(STORE_MODE, CacheStoreMode.USE);
+        entityManager.setProperty(STORE_MODE, CacheStoreMode.BYPASS);
+        return new ReplicaTransactionData(transactionData, entityManager, previousStoreMode);
+    }
+
+    @Override
+    public void cleanupTransaction(Object transactionData) {
+        if (transactionData instanceof ReplicaTransactionData) {
+            ReplicaTransactionData replicaData = (ReplicaTransactionData) transactionData;
+            if (replicaData.entityManager.isOpen())
+                replicaData.entityManager.setProperty(STORE_MODE, replicaData.previousStoreMode);
+            transactionData = replicaData.transactionData;
+        }
+        super.cleanupTransaction(transactionData);
+    }
+
+    private static class ReplicaTransactionData {
+
+        private final Object transactionData;
+        private final EntityManager entityManager;
+        private final Object previousStoreMode;
+
+        private ReplicaTransactionData(Object transactionData, EntityManager entityManager,
+                                       Object previousStoreMode) {
+            this.transactionData = transactionData;
+            this.entityManager = entityManager;
+            this.previousStoreMode = previousStoreMode;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.space.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Источник данных, направляющий транзакции только для чтения на реплики, а остальные запросы на основную БД.
+ * Соединение выбирается при первом запросе к БД, а не при открытии транзакции, поэтому источник используется
+ * через {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: к этому моменту признак
+ * readOnly транзакции уже известен.
+ * Реплики отстают от основной БД не больше чем на maxLag, поэтому в течение этого времени после своей записи
+ * клиент читает с основной БД (см. {@link ReadYourWritesInterceptor}).
+ */
+@ManagedResource(objectName = "com.space:type=DataSourceRouting")
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    /**
+     * Способ выбора реплики для очередного соединения
+     */
+    public enum Selection {
+        ROUND_ROBIN,
+        // Реплика с наименьшим числом занятых соединений пула
+        LEAST_LOADED
+    }
+
+    private static final String PRIMARY = "primary";
+
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = ThreadLocal.withInitial(() -> false);
+
+    private final List<DataSource> replicas;
+    private final Selection selection;
+    private final long maxLagMillis;
+
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder primaryConnections = new LongAdder();
+    private final LongAdder replicaConnections = new LongAdder();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, Selection selection,
+                                    long maxLagMillis) {
+        this.replicas = new ArrayList<>(replicas);
+        this.selection = selection;
+        this.maxLagMillis = maxLagMillis;
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < this.replicas.size(); i++)
+            targets.put(i, this.replicas.get(i));
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    /**
+     * Направляет запросы текущего потока на основную БД независимо от признака readOnly
+     */
+    public static void requirePrimary(boolean required) {
+        PRIMARY_REQUIRED.set(required);
+    }
+
+    public static boolean isPrimaryRequired() {
+        return PRIMARY_REQUIRED.get();
+    }
+
+    /**
+     * Переносит выбор основной БД текущего потока в задачу, выполняемую в другом потоке
+     */
+    public static <T> Supplier<T> propagate(Supplier<T> task) {
+        boolean required = isPrimaryRequired();
+        return () -> {
+            boolean previous = isPrimaryRequired();
+            requirePrimary(required);
+            try {
+                return task.get();
+            } finally {
+                requirePrimary(previous);
+            }
+        };
+    }
+
+    public boolean hasReplicas() {
+        return !replicas.isEmpty();
+    }
+
+    /**
+     * Наибольшее отставание реплик от основной БД, 0 если реплик нет
+     */
+    public long getMaxLagMillis() {
+        return hasReplicas() ? maxLagMillis : 0;
+    }
+
+    @ManagedAttribute
+    public int getReplicaCount() {
+        return replicas.size();
+    }
+
+    @ManagedAttribute
+    public long getPrimaryConnections() {
+        return primaryConnections.sum();
+    }
+
+    @ManagedAttribute
+    public long getReplicaConnections() {
+        return replicaConnections.sum();
+    }
+
+    /**
+     * Будут ли запросы транзакции текущего потока с таким признаком readOnly направлены на реплику
+     */
+    public boolean routesToReplica(boolean readOnly) {
+        return readOnly && !replicas.isEmpty() && !isPrimaryRequired();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!routesToReplica(TransactionSynchronizationManager.isCurrentTransactionReadOnly())) {
+            primaryConnections.increment();
+            return PRIMARY;
+        }
+        replicaConnections.increment();
+        return selection == Selection.LEAST_LOADED ? leastLoaded() : roundRobin();
+    }
+
+    private int roundRobin() {
+        return Math.floorMod(next.getAndIncrement(), replicas.size());
+    }
+
+    private int leastLoaded() {
+        // Среди одинаково загруженных реплик выбираем по кругу, чтобы не нагружать всегда первую
+        int start = roundRobin();
+        int best = start;
+        int bestActive = Integer.MAX_VALUE;
+        for (int i = 0; i < replicas.size(); i++) {
+            int index = (start + i) % replicas.size();
+            int active = activeConnections(replicas.get(index));
+            if (active < bestActive) {
+                best = index;
+                bestActive = active;
+            }
+        }
+        return best;
+    }
+
+    private static int activeConnections(DataSource dataSource) {
+        if (dataSource instanceof HikariDataSource) {
+            HikariPoolMXBean pool = ((HikariDataSource) dataSource).getHikariPoolMXBean();
+            if (pool != null)
+                return pool.getActiveConnections();
+        }
+        return 0;
+    }
+
+    /**
+     * Закрывает пулы реплик: они создаются вместе с этим источником и больше нигде не используются
+     */
+    @Override
+    public void close() throws IOException {
+        for (DataSource replica : replicas) {
+            if (replica instanceof Closeable)
+                ((Closeable) replica).close();
+        }
+    }
+}
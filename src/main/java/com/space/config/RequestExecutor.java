@@ -0,0 +1,162 @@
+package com.space.config;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Ограниченный исполнитель, в котором выполняются запросы к БД асинхронных конечных точек чтения.
+ * Поток контейнера освобождается сразу после постановки задачи, поэтому медленные фильтры занимают
+ * только потоки этого исполнителя, число которых согласовано с пулом соединений.
+ * Одновременно выполняется не больше threads задач и ждет не больше queueSize: переполненная очередь
+ * отклоняет задачу сразу, а задача, прождавшая дольше таймаута запроса, не выполняется: клиент уже
+ * получил ответ о таймауте.
+ */
+@ManagedResource(objectName = "com.space:type=RequestExecutor")
+public class RequestExecutor {
+
+    private final ExecutorService launcher;
+    private final int maxThreads;
+    private final int queueCapacity;
+    private final long timeoutNanos;
+
+    // Разрешения на выполнение и на место в исполнителе (выполняемые и ожидающие задачи)
+    private final Semaphore running;
+    private final Semaphore admitted;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    /**
+     * Исполнитель на пуле из threads обычных потоков
+     */
+    public RequestExecutor(int threads, int queueSize, long timeoutMillis) {
+        this(threads, queueSize, timeoutMillis, platformPool(threads));
+    }
+
+    /**
+     * @param launcher Исполнитель, запускающий задачи, например с новым виртуальным потоком на каждую задачу
+     *                 ({@link VirtualThreads#perTaskExecutor}); ожидающая задача держит свой поток,
+     *                 но выполняется, только получив одно из threads разрешений
+     */
+    public RequestExecutor(int threads, int queueSize, long timeoutMillis, ExecutorService launcher) {
+        this.launcher = launcher;
+        maxThreads = threads;
+        queueCapacity = queueSize;
+        timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        running = new Semaphore(threads);
+        admitted = new Semaphore(threads + queueSize);
+    }
+
+    /**
+     * Ставит задачу в очередь исполнителя. Выбор основной БД текущего запроса переносится в задачу
+     *
+     * @return Результат задачи; если очередь заполнена, он завершается {@link RejectedExecutionException}
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        Supplier<T> propagated = ReplicaRoutingDataSource.propagate(task);
+        long submittedAt = System.nanoTime();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            execute(() -> {
+                if (System.nanoTime() - submittedAt > timeoutNanos) {
+                    expired.increment();
+                    result.completeExceptionally(new TimeoutException("Request expired in queue"));
+                    return;
+                }
+                try {
+                    result.complete(propagated.get());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private void execute(Runnable job) {
+        if (!admitted.tryAcquire())
+            throw new RejectedExecutionException("Request queue is full");
+        queued.incrementAndGet();
+        try {
+            launcher.execute(() -> {
+                running.acquireUninterruptibly();
+                queued.decrementAndGet();
+                try {
+                    job.run();
+                    completed.increment();
+                } finally {
+                    running.release();
+                    admitted.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            admitted.release();
+            throw e;
+        }
+    }
+
+    // Очередь пула не ограничена: число ожидающих задач ограничивает admitted
+    private static ExecutorService platformPool(int threads) {
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactory() {
+                    private int count;
+
+                    @Override
+                    public synchronized Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "request-" + count++);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    public void shutdown() {
+        launcher.shutdown();
+    }
+
+    @ManagedAttribute
+    public int getQueueSize() {
+        return queued.get();
+    }
+
+    @ManagedAttribute
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    @ManagedAttribute
+    public int getActiveThreads() {
+        return maxThreads - running.availablePermits();
+    }
+
+    @ManagedAttribute
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    @ManagedAttribute
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    @ManagedAttribute
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    @ManagedAttribute
+    public long getExpired() {
+        return expired.sum();
+    }
+}
@@ -0,0 +1,49 @@
+package com.space.config;
+
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.resource.ContentVersionStrategy;
+import org.springframework.web.servlet.resource.ResourceUrlProvider;
+import org.springframework.web.servlet.resource.VersionStrategy;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Заголовок Cache-Control статических ресурсов. Адрес с актуальным хешем содержимого
+ * (scripts-&lt;md5&gt;.js) никогда не изменится, поэтому браузер хранит ответ год без перепроверки.
+ * Адреса без хеша, а также с устаревшим хешем (ответ 404, например при поочередном обновлении узлов),
+ * перепроверяются при каждом обращении.
+ */
+public class ResourceCacheInterceptor implements HandlerInterceptor {
+
+    // В CacheControl этой версии Spring нет директивы immutable
+    private static final String IMMUTABLE = "max-age=" + TimeUnit.DAYS.toSeconds(365) + ", public, immutable";
+    private static final String REVALIDATE = "no-cache";
+
+    private final ObjectFactory<ResourceUrlProvider> urlProvider;
+    private final VersionStrategy versionStrategy = new ContentVersionStrategy();
+
+    public ResourceCacheInterceptor(ObjectFactory<ResourceUrlProvider> urlProvider) {
+        this.urlProvider = urlProvider;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        response.setHeader(HttpHeaders.CACHE_CONTROL, isCurrentVersion(request) ? IMMUTABLE : REVALIDATE);
+        return true;
+    }
+
+    private boolean isCurrentVersion(HttpServletRequest request) {
+        ResourceUrlProvider provider = urlProvider.getObject();
+        String lookupPath = provider.getUrlPathHelper().getLookupPathForRequest(request);
+        String version = versionStrategy.extractVersion(lookupPath);
+        if (version == null)
+            return false;
+        // Хеш содержимого вычисляется один раз: цепочка ресурсов кэширует адреса
+        String plainPath = versionStrategy.removeVersion(lookupPath, version);
+        return lookupPath.equals(provider.getForLookupPath(plainPath));
+    }
+}
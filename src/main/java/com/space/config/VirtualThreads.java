@@ -0,0 +1,97 @@
+package com.space.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Режим виртуальных потоков (JDK 21+), включается свойством threads.virtual=true.
+ * Приложение собирается под Java 8, поэтому виртуальные потоки создаются через отражение;
+ * на JDK без них режим не включается и остаются обычные потоки.
+ * <p>
+ * Закрепление (pinning): MySQL Connector/J 8.0 выполняет запросы внутри synchronized, поэтому
+ * до JDK 24 виртуальный поток на время обращения к БД занимает свой поток-носитель.
+ * Потоки контейнера тоже виртуальные, а запись, выгрузка, импорт и /changes идут в них, минуя пулы запросов,
+ * поэтому одновременных обращений к БД не больше, чем соединений во всех пулах HikariCP: только поток,
+ * получивший соединение, входит в драйвер. Если соединений больше, чем потоков-носителей, при запуске
+ * выводится предупреждение. HikariCP ждет свободного соединения без мониторов и поток-носитель не занимает.
+ * Проверка на узле: -Djdk.tracePinnedThreads=short
+ */
+public final class VirtualThreads {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private static final String ENABLED_PROPERTY = "threads.virtual";
+    private static final String PARALLELISM_PROPERTY = "jdk.virtualThreadScheduler.parallelism";
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Проверяет, включен ли режим виртуальных потоков и поддерживает ли его JDK
+     */
+    public static boolean isEnabled(Environment environment) {
+        if (!environment.getProperty(ENABLED_PROPERTY, Boolean.class, false))
+            return false;
+        if (!isAvailable()) {
+            log.warn("{} is set, but JDK {} has no virtual threads", ENABLED_PROPERTY,
+                    System.getProperty("java.version"));
+            return false;
+        }
+        return true;
+    }
+
+    public static boolean isAvailable() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Фабрика виртуальных потоков с именами prefix0, prefix1, ...
+     */
+    public static ThreadFactory factory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            Method factory = builderClass.getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads are not available", e);
+        }
+    }
+
+    /**
+     * Исполнитель, запускающий каждую задачу в новом виртуальном потоке с именем prefix0, prefix1, ...
+     */
+    public static ExecutorService perTaskExecutor(String prefix) {
+        try {
+            Method perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) perTask.invoke(null, factory(prefix));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads are not available", e);
+        }
+    }
+
+    /**
+     * Предупреждает, если обращений к БД одновременно может быть больше, чем потоков-носителей
+     *
+     * @param connections Число соединений во всех пулах
+     */
+    static void checkPinning(int connections) {
+        int carriers = Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors());
+        if (connections > carriers)
+            log.warn("Database calls pin virtual threads to carriers: up to {} pooled connections " +
+                    "for {} carrier threads. Lower db.pool.maxSize or raise {}",
+                    connections, carriers, PARALLELISM_PROPERTY);
+    }
+}
@@ -2,26 +2,67 @@ package com.space.config;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.space.model.ShipJson;
+import com.space.service.ShipJsonCache;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableMBeanExport;
+import org.springframework.core.env.Environment;
 import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.json.SpringHandlerInstantiator;
+import org.springframework.jmx.support.RegistrationPolicy;
 import org.springframework.web.servlet.ViewResolver;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.ViewControllerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.resource.EncodedResourceResolver;
+import org.springframework.web.servlet.resource.ResourceUrlProvider;
+import org.springframework.web.servlet.resource.VersionResourceResolver;
 import org.springframework.web.servlet.view.InternalResourceViewResolver;
 import org.springframework.web.servlet.view.JstlView;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
+// Экспортер корневого контекста не видит компонентов этого контекста (например, ShipChangeStream),
+// поэтому их атрибуты JMX публикует свой экспортер
 @Configuration
 @EnableWebMvc
 @ComponentScan("com.space.controller")
+@EnableMBeanExport(registration = RegistrationPolicy.IGNORE_EXISTING)
 public class WebConfig implements WebMvcConfigurer {
 
+    private static final String RESOURCES = "/resources/**";
+
+    @Autowired
+    private ReplicaRoutingDataSource routingDataSource;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private ShipJsonCache jsonCache;
+
+    // Провайдер объявляется конфигурацией Spring MVC, которая сама зависит от WebConfig, поэтому берется лениво
+    @Autowired
+    private ObjectProvider<ResourceUrlProvider> resourceUrlProvider;
 
     @Bean
     public ViewResolver internalResourceViewResolver() {
@@ -37,16 +78,57 @@ public class WebConfig implements WebMvcConfigurer {
         registry.addViewController("/").setViewName("index");
     }
 
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new ResourceCacheInterceptor(resourceUrlProvider)).addPathPatterns(RESOURCES);
+        if (routingDataSource.hasReplicas())
+            registry.addInterceptor(new ReadYourWritesInterceptor(routingDataSource.getMaxLagMillis()))
+                    .addPathPatterns("/rest/**");
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        // По истечении таймаута клиент получает 503, подписки на изменения задают свой таймаут
+        configurer.setDefaultTimeout(environment.getProperty("rest.timeout", Long.class, AppConfig.REQUEST_TIMEOUT));
+    }
+
+    /**
+     * Адреса ресурсов на странице содержат хеш содержимого (их подставляет ResourceUrlEncodingFilter),
+     * заголовки кэширования выставляет {@link ResourceCacheInterceptor}. Если рядом с файлом лежит
+     * заранее сжатый вариант .br или .gz (их готовит сборка), он отдается клиенту, который его принимает.
+     */
     @Override
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        registry.addResourceHandler("/resources/**").addResourceLocations("/resources/");
+        registry.addResourceHandler(RESOURCES).addResourceLocations("/resources/")
+                .resourceChain(true)
+                .addResolver(new EncodedResourceResolver())
+                .addResolver(new VersionResourceResolver().addContentVersionStrategy("/**"));
+    }
+
+    @Bean
+    public ObjectMapper objectMapper() {
+        // Аннотация Ship называет класс кодека, а ответы получают его экземпляр с кэшем JSON
+        ShipJson.Serializer shipSerializer = new ShipJson.Serializer(jsonCache);
+        SpringHandlerInstantiator instantiator =
+                new SpringHandlerInstantiator(applicationContext.getAutowireCapableBeanFactory()) {
+                    @Override
+                    public JsonSerializer<?> serializerInstance(SerializationConfig config, Annotated annotated,
+                                                                Class<?> implClass) {
+                        return implClass == ShipJson.Serializer.class
+                                ? shipSerializer : super.serializerInstance(config, annotated, implClass);
+                    }
+                };
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().handlerInstantiator(instantiator).build();
+        objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE);
+        objectMapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+        return objectMapper;
     }
 
     @Override
     public void configureMessageConverters(List<HttpMessageConverter<?>> converters) {
-        MappingJackson2HttpMessageConverter converter = new MappingJackson2HttpMessageConverter();
-        converter.getObjectMapper().setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE);
-        converter.getObjectMapper().setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+        MappingJackson2HttpMessageConverter converter = new MappingJackson2HttpMessageConverter(objectMapper());
         converters.add(converter);
+        // Служебные строки событий /rest/ships/stream пишутся как text/plain
+        converters.add(new StringHttpMessageConverter(StandardCharsets.UTF_8));
     }
 }
\ No newline at end of file
@@ -0,0 +1,237 @@
+package com.space.controller;
+
+import com.space.service.ShipChange;
+import com.space.service.ShipChangePublisher;
+import com.space.service.ShipDTO;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.http.MediaType;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter.SseEventBuilder;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Рассылает изменения флота подписчикам /rest/ships/stream (Server-Sent Events).
+ * Подписка - асинхронный запрос сервлета: пока событий нет, он не занимает потоков,
+ * поэтому тысячи простаивающих подписчиков стоят только памяти на их очереди.
+ * Каждый подписчик получает события в свою ограниченную очередь; отправкой занимается общий пул потоков,
+ * так что медленный клиент не задерживает ни изменяющие запросы, ни других подписчиков.
+ * Корабль, который изменение вывело из фильтра подписчика, приходит событием leave с его id.
+ * Размер очереди, время жизни подписки (мс) и период heartbeat (мс) задаются свойствами
+ * ship.stream.bufferSize, ship.stream.timeout и ship.stream.heartbeat.
+ */
+@Component
+@ManagedResource(objectName = "com.space:type=ShipChangeStream")
+public class ShipChangeStream implements Consumer<ShipChange>, InitializingBean, DisposableBean {
+
+    private static final int DEFAULT_BUFFER_SIZE = 256;
+    private static final long DEFAULT_TIMEOUT = TimeUnit.MINUTES.toMillis(30);
+    private static final long DEFAULT_HEARTBEAT = TimeUnit.SECONDS.toMillis(15);
+    private static final int SENDER_THREADS = 2;
+
+    // Корабль перестал подходить под фильтр подписчика, клиент должен убрать его из выдачи
+    static final String LEAVE_EVENT = "leave";
+
+    @Autowired
+    private ShipChangePublisher changePublisher;
+
+    @Autowired
+    private Environment environment;
+
+    private int bufferSize;
+    private long timeout;
+    private ExecutorService sender;
+    private ScheduledExecutorService heartbeat;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+
+    @Override
+    public void afterPropertiesSet() {
+        bufferSize = environment.getProperty("ship.stream.bufferSize", Integer.class, DEFAULT_BUFFER_SIZE);
+        timeout = environment.getProperty("ship.stream.timeout", Long.class, DEFAULT_TIMEOUT);
+        long heartbeatPeriod = environment.getProperty("ship.stream.heartbeat", Long.class, DEFAULT_HEARTBEAT);
+
+        sender = Executors.newFixedThreadPool(SENDER_THREADS, daemon("ship-stream"));
+        // Heartbeat не дает прокси закрыть простаивающее соединение и выявляет отключившихся клиентов
+        heartbeat = Executors.newSingleThreadScheduledExecutor(daemon("ship-stream-heartbeat"));
+        heartbeat.scheduleAtFixedRate(() -> subscribers.forEach(subscriber ->
+                        subscriber.offer(SseEmitter.event().comment("heartbeat"))),
+                heartbeatPeriod, heartbeatPeriod, TimeUnit.MILLISECONDS);
+
+        changePublisher.addListener(this);
+    }
+
+    @Override
+    public void destroy() {
+        changePublisher.removeListener(this);
+        heartbeat.shutdownNow();
+        sender.shutdownNow();
+        completeAll();
+    }
+
+    /**
+     * Открывает подписку на изменения кораблей, подходящих под фильтр
+     */
+    public SseEmitter subscribe(ShipDTO filter) {
+        SseEmitter emitter = new SseEmitter(timeout);
+        Subscriber subscriber = new Subscriber(emitter, filter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        return emitter;
+    }
+
+    /**
+     * Закрывает все подписки; клиенты EventSource переподключатся сами
+     */
+    public void completeAll() {
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        subscribers.clear();
+    }
+
+    @ManagedAttribute
+    public int getSubscribers() {
+        return subscribers.size();
+    }
+
+    @ManagedAttribute
+    public long getSent() {
+        return sent.sum();
+    }
+
+    @ManagedAttribute
+    public long getOverflows() {
+        return overflows.sum();
+    }
+
+    @Override
+    public void accept(ShipChange change) {
+        for (Subscriber subscriber : subscribers) {
+            SseEventBuilder event = toEvent(change, subscriber.filter);
+            if (event != null)
+                subscriber.offer(event);
+        }
+    }
+
+    private static SseEventBuilder toEvent(ShipChange change, ShipDTO filter) {
+        String name = eventName(change, filter);
+        if (name == null)
+            return null;
+        // Номер изменения служит id события: после обрыва клиент догоняет пропущенное через /rest/ships/changes
+        SseEventBuilder event = SseEmitter.event().id(String.valueOf(change.getSeq())).name(name);
+        switch (change.getType()) {
+            case CREATE:
+            case UPDATE:
+                return LEAVE_EVENT.equals(name) ? event.data(change.getId(), MediaType.APPLICATION_JSON)
+                        : event.data(change.getShip(), MediaType.APPLICATION_JSON);
+            case DELETE:
+                return event.data(change.getId(), MediaType.APPLICATION_JSON);
+            default:
+                return event.data("");
+        }
+    }
+
+    /**
+     * Имя события для подписчика с фильтром или null, если изменение его не касается
+     */
+    private static String eventName(ShipChange change, ShipDTO filter) {
+        String name = change.getType().name().toLowerCase();
+        switch (change.getType()) {
+            case CREATE:
+                // Подписчик получает только корабли, подходящие под его фильтр
+                return filter.matches(change.getShip()) ? name : null;
+            case UPDATE:
+                if (filter.matches(change.getShip()))
+                    return name;
+                // Корабль мог подходить под фильтр до изменения; если прежнее состояние неизвестно,
+                // лишнее событие безопаснее пропущенного
+                if (change.getPrevious() != null && !filter.matches(change.getPrevious()))
+                    return null;
+                return LEAVE_EVENT;
+            default:
+                // Удаленный корабль уже не проверить на фильтр, поэтому о нем узнают все подписчики
+                return name;
+        }
+    }
+
+    private static SseEventBuilder reloadEvent() {
+        return SseEmitter.event().name(ShipChange.Type.RELOAD.name().toLowerCase()).data("");
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private class Subscriber {
+        private final SseEmitter emitter;
+        private final ShipDTO filter;
+        // Узлы связной очереди создаются по мере поступления событий, пустая очередь почти не занимает памяти
+        private final BlockingQueue<SseEventBuilder> buffer = new LinkedBlockingQueue<>(bufferSize);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Subscriber(SseEmitter emitter, ShipDTO filter) {
+            this.emitter = emitter;
+            this.filter = filter;
+        }
+
+        void offer(SseEventBuilder event) {
+            if (!buffer.offer(event)) {
+                // Клиент не успевает читать: вместо пропущенных событий он получит указание перечитать выдачу
+                overflows.increment();
+                buffer.clear();
+                buffer.offer(reloadEvent());
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    sender.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                SseEventBuilder event;
+                while (Objects.nonNull(event = buffer.poll())) {
+                    emitter.send(event);
+                    sent.increment();
+                }
+            } catch (IOException | IllegalStateException e) {
+                // Клиент отключился или подписка уже завершена
+                subscribers.remove(this);
+                buffer.clear();
+                emitter.completeWithError(e);
+                return;
+            } finally {
+                scheduled.set(false);
+            }
+            // Событие могло прийти после опустошения очереди, но до снятия флага
+            if (!buffer.isEmpty())
+                schedule();
+        }
+    }
+}
@@ -1,14 +1,38 @@
 package com.space.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.space.config.RequestExecutor;
 import com.space.model.Ship;
 import com.space.model.ShipType;
+import com.space.service.ShipChanges;
+import com.space.service.ShipCursor;
 import com.space.service.ShipDTO;
+import com.space.service.ShipImportResult;
+import com.space.service.ShipPage;
 import com.space.service.ShipService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.persistence.OptimisticLockException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @RestController
 public class ShipController {
@@ -16,48 +40,208 @@ public class ShipController {
     @Autowired
     private ShipService shipService;
 
+    private ObjectMapper objectMapper;
+
+    // Выгрузка кодирует корабли без кэша JSON: полная выгрузка иначе вытеснила бы из него часто читаемые корабли
+    private ObjectMapper exportMapper;
+
+    @Autowired
+    private ShipChangeStream changeStream;
+
+    @Autowired
+    private RequestExecutor requestExecutor;
+
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final int IMPORT_BATCH_SIZE = 1000;
+
+    private static final int CHANGES_PAGE_SIZE = 100;
+
+    // Один entity-tag списка If-Match: слабые (W/) при строгом сравнении ни с чем не совпадают
+    private static final Pattern ENTITY_TAG = Pattern.compile("(W/)?\"([^\"]*)\"");
+
+    @Autowired
+    public void setObjectMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        // Без связанного с кэшем экземпляра Jackson создает кодек Ship из аннотации, то есть без кэша
+        exportMapper = objectMapper.copy();
+        exportMapper.setHandlerInstantiator(null);
+    }
+
+    // Запросы чтения выполняются в пуле requestExecutor, поток контейнера освобождается сразу
     @GetMapping(path = "/rest/ships")
-    public ResponseEntity<Iterable<Ship>> findShips(String name, String planet, ShipType shipType, Long after,
-                                                    Long before, Boolean isUsed, Double minSpeed, Double maxSpeed,
-                                                    Integer minCrewSize, Integer maxCrewSize, Double minRating,
-                                                    Double maxRating, Integer pageNumber, Integer pageSize,
-                                                    ShipOrder order) {
+    public CompletableFuture<ResponseEntity<Iterable<Ship>>> findShips(String name, String planet,
+                                                                       ShipType shipType, Long after, Long before,
+                                                                       Boolean isUsed, Double minSpeed,
+                                                                       Double maxSpeed, Integer minCrewSize,
+                                                                       Integer maxCrewSize, Double minRating,
+                                                                       Double maxRating, Integer pageNumber,
+                                                                       Integer pageSize, ShipOrder order,
+                                                                       String cursor) {
 
         ShipDTO shipDTO = new ShipDTO(name, planet, shipType, after, before, isUsed, minSpeed, maxSpeed, minCrewSize,
                 maxCrewSize, minRating, maxRating, pageNumber, pageSize, order);
 
-        Iterable<Ship> result = shipService.getShips(shipDTO);
-        return ResponseEntity.ok(result);
+        // Без параметра cursor работает обычная постраничная выдача по номеру страницы
+        if (cursor == null) {
+            return requestExecutor.submit(() -> {
+                Iterable<Ship> result = shipService.getShips(shipDTO);
+                return ResponseEntity.ok().eTag(listETag(result, null)).body(result);
+            });
+        }
+
+        ShipOrder cursorOrder = order == null ? ShipOrder.ID : order;
+        ShipCursor shipCursor = null;
+        if (!cursor.isEmpty()) {
+            shipCursor = ShipCursor.decode(cursor);
+            // Курсор должен быть получен для того же порядка сортировки
+            if (shipCursor == null || shipCursor.getOrder() != cursorOrder)
+                return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        }
+
+        ShipCursor afterCursor = shipCursor;
+        return requestExecutor.submit(() -> {
+            List<Ship> result = shipService.getShipsAfter(shipDTO, afterCursor);
+
+            // Неполная страница означает, что выдача закончилась
+            if (result.isEmpty() || result.size() < (pageSize == null ? ShipDTO.DEFAULT_PAGE_SIZE : pageSize))
+                return ResponseEntity.ok().eTag(listETag(result, null)).body(result);
+
+            String nextCursor = ShipCursor.after(result.get(result.size() - 1), cursorOrder).encode();
+            return ResponseEntity.ok().header(NEXT_CURSOR_HEADER, nextCursor).eTag(listETag(result, null))
+                    .body(result);
+        });
     }
 
 
     @GetMapping(path = "/rest/ships/{id}")
-    public ResponseEntity<Ship> findShipById(@PathVariable Long id) {
+    public CompletableFuture<ResponseEntity<Ship>> findShipById(@PathVariable Long id) {
 
         // Убираем неподходящие id
         if (id < 1)
-            return ResponseEntity.badRequest().build();
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
 
-        Optional<Ship> optionalResult = shipService.findById(id);
+        return requestExecutor.submit(() -> {
+            Optional<Ship> optionalResult = shipService.findById(id);
 
-        // Если корабль не найден, надо вернуть 404
-        if (!optionalResult.isPresent())
-            return ResponseEntity.notFound().build();
+            // Если корабль не найден, надо вернуть 404
+            if (!optionalResult.isPresent())
+                return ResponseEntity.notFound().build();
 
-        return ResponseEntity.ok(optionalResult.get());
+            // При совпадении с If-None-Match Spring ответит 304, не сериализуя корабль
+            Ship ship = optionalResult.get();
+            return ResponseEntity.ok().eTag(eTag(ship)).body(ship);
+        });
     }
 
     @GetMapping(path = "/rest/ships/count")
-    public ResponseEntity<Integer> getCount(String name, String planet, ShipType shipType, Long after,
-                                            Long before, Boolean isUsed, Double minSpeed, Double maxSpeed,
-                                            Integer minCrewSize, Integer maxCrewSize, Double minRating,
-                                            Double maxRating, Integer pageNumber, Integer pageSize,
-                                            ShipOrder order) {
+    public CompletableFuture<ResponseEntity<Integer>> getCount(String name, String planet, ShipType shipType,
+                                                               Long after, Long before, Boolean isUsed,
+                                                               Double minSpeed, Double maxSpeed,
+                                                               Integer minCrewSize, Integer maxCrewSize,
+                                                               Double minRating, Double maxRating,
+                                                               Integer pageNumber, Integer pageSize,
+                                                               ShipOrder order) {
+        ShipDTO shipDTO = new ShipDTO(name, planet, shipType, after, before, isUsed, minSpeed, maxSpeed, minCrewSize,
+                maxCrewSize, minRating, maxRating, pageNumber, pageSize, order);
+        return requestExecutor.submit(() -> ResponseEntity.ok(shipService.getCount(shipDTO)));
+    }
+
+    @GetMapping(path = "/rest/ships/page")
+    public CompletableFuture<ResponseEntity<ShipPage>> getPage(String name, String planet, ShipType shipType,
+                                                               Long after, Long before, Boolean isUsed,
+                                                               Double minSpeed, Double maxSpeed,
+                                                               Integer minCrewSize, Integer maxCrewSize,
+                                                               Double minRating, Double maxRating,
+                                                               Integer pageNumber, Integer pageSize,
+                                                               ShipOrder order) {
         ShipDTO shipDTO = new ShipDTO(name, planet, shipType, after, before, isUsed, minSpeed, maxSpeed, minCrewSize,
                 maxCrewSize, minRating, maxRating, pageNumber, pageSize, order);
-        return ResponseEntity.ok(shipService.getCount(shipDTO));
+        return requestExecutor.submit(() -> {
+            ShipPage page = shipService.getPage(shipDTO);
+            return ResponseEntity.ok().eTag(listETag(page.getItems(), page.getTotal())).body(page);
+        });
+    }
+
+    /**
+     * Очередь пула запросов чтения заполнена или запрос пролежал в ней дольше таймаута
+     */
+    @ExceptionHandler({RejectedExecutionException.class, TimeoutException.class})
+    public ResponseEntity<Void> overloaded() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
+
+    /**
+     * Подписка на изменения кораблей, подходящих под фильтр: события create, update и delete
+     * и reload, после которого выдачу нужно перечитать
+     */
+    @GetMapping(path = "/rest/ships/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(String name, String planet, ShipType shipType, Long after, Long before,
+                             Boolean isUsed, Double minSpeed, Double maxSpeed, Integer minCrewSize,
+                             Integer maxCrewSize, Double minRating, Double maxRating) {
+        ShipDTO shipDTO = new ShipDTO(name, planet, shipType, after, before, isUsed, minSpeed, maxSpeed, minCrewSize,
+                maxCrewSize, minRating, maxRating, null, null, null);
+        return changeStream.subscribe(shipDTO);
+    }
+
+    /**
+     * Изменения флота после водяного знака since; без since выдается весь флот.
+     * Следующую страницу нужно запрашивать с водяным знаком из ответа, пока hasMore не станет false
+     */
+    @GetMapping(path = "/rest/ships/changes")
+    public ResponseEntity<ShipChanges> getChanges(Long since, Integer pageSize) {
+        if ((since != null && since < 0) || (pageSize != null && pageSize < 1))
+            return ResponseEntity.badRequest().build();
+        return ResponseEntity.ok(shipService.getChanges(since == null ? -1 : since,
+                pageSize == null ? CHANGES_PAGE_SIZE : pageSize));
+    }
+
+    @GetMapping(path = "/rest/ships/export")
+    public void export(String name, String planet, ShipType shipType, Long after, Long before, Boolean isUsed,
+                       Double minSpeed, Double maxSpeed, Integer minCrewSize, Integer maxCrewSize,
+                       Double minRating, Double maxRating, ShipOrder order, ShipExportFormat format,
+                       HttpServletResponse response) throws IOException {
+        ShipDTO shipDTO = new ShipDTO(name, planet, shipType, after, before, isUsed, minSpeed, maxSpeed, minCrewSize,
+                maxCrewSize, minRating, maxRating, null, null, order);
+        ShipExportFormat exportFormat = format == null ? ShipExportFormat.NDJSON : format;
+
+        response.setContentType(exportFormat.getContentType());
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        Writer out = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+        ShipExportFormat.ShipWriter writer = exportFormat.writer(exportMapper, out);
+        try {
+            shipService.exportShips(shipDTO, ship -> {
+                try {
+                    writer.write(ship);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+        out.flush();
     }
 
+    @PostMapping(path = "/rest/ships/import")
+    public ResponseEntity<ShipImportResult> importShips(HttpServletRequest request, Integer batchSize)
+            throws IOException {
+        if (batchSize != null && batchSize < 1)
+            return ResponseEntity.badRequest().build();
+
+        ShipExportFormat format = request.getContentType() != null
+                && request.getContentType().startsWith(ShipExportFormat.CSV.getContentType())
+                ? ShipExportFormat.CSV : ShipExportFormat.NDJSON;
+        BufferedReader in = new BufferedReader(new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8));
+        try {
+            ShipImportResult result = shipService.importShips(new ShipImportReader(in, format, objectMapper),
+                    batchSize == null ? IMPORT_BATCH_SIZE : batchSize);
+            return ResponseEntity.ok(result);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
 
     @PostMapping(path = "/rest/ships")
     public ResponseEntity<Ship> save(@RequestBody Ship ship) {
@@ -67,19 +251,55 @@ public class ShipController {
         return ResponseEntity.badRequest().build();
     }
 
+    /**
+     * Массово изменяет корабли, подходящие под фильтр, и возвращает количество измененных
+     */
+    @PostMapping(path = "/rest/ships/bulk")
+    public ResponseEntity<Integer> updateShips(String name, String planet, ShipType shipType, Long after,
+                                               Long before, Boolean isUsed, Double minSpeed, Double maxSpeed,
+                                               Integer minCrewSize, Integer maxCrewSize, Double minRating,
+                                               Double maxRating, @RequestBody Ship patch) {
+        ShipDTO shipDTO = new ShipDTO(name, planet, shipType, after, before, isUsed, minSpeed, maxSpeed, minCrewSize,
+                maxCrewSize, minRating, maxRating, null, null, null);
+
+        // Без фильтра запрос затронул бы весь флот, такие запросы не принимаем
+        if (!shipDTO.hasConditions() || !patch.hasUpdates() || !patch.isValidForUpdate())
+            return ResponseEntity.badRequest().build();
+
+        return ResponseEntity.ok(shipService.updateShips(shipDTO, patch));
+    }
+
+    /**
+     * Массово удаляет корабли, подходящие под фильтр, и возвращает количество удаленных
+     */
+    @DeleteMapping(path = "/rest/ships")
+    public ResponseEntity<Integer> deleteShips(String name, String planet, ShipType shipType, Long after,
+                                               Long before, Boolean isUsed, Double minSpeed, Double maxSpeed,
+                                               Integer minCrewSize, Integer maxCrewSize, Double minRating,
+                                               Double maxRating) {
+        ShipDTO shipDTO = new ShipDTO(name, planet, shipType, after, before, isUsed, minSpeed, maxSpeed, minCrewSize,
+                maxCrewSize, minRating, maxRating, null, null, null);
+
+        if (!shipDTO.hasConditions())
+            return ResponseEntity.badRequest().build();
+
+        return ResponseEntity.ok(shipService.deleteShips(shipDTO));
+    }
+
     @DeleteMapping(path = "/rest/ships/{id}")
     public ResponseEntity<Ship> deleteById(@PathVariable Long id) {
         if (id < 1)
             return ResponseEntity.badRequest().build();
-        Optional<Ship> ship = shipService.findById(id);
-        if (!ship.isPresent())
+        // Удаление одним запросом: если удалять было нечего, корабля нет
+        if (!shipService.deleteById(id))
             return ResponseEntity.notFound().build();
-        shipService.deleteById(id);
         return ResponseEntity.ok().build();
     }
 
     @PostMapping(path = "/rest/ships/{id}")
-    public ResponseEntity<Ship> update(@PathVariable Long id, @RequestBody Ship ship) {
+    public ResponseEntity<Ship> update(@PathVariable Long id, @RequestBody Ship ship,
+                                       @RequestHeader(value = HttpHeaders.IF_MATCH, required = false)
+                                               String ifMatch) {
 
         if (id < 1)
             return ResponseEntity.badRequest().build();
@@ -87,13 +307,58 @@ public class ShipController {
         if (!ship.isValidForUpdate())
             return ResponseEntity.badRequest().build();
 
-        Optional<Ship> optionalFoundShip = shipService.findById(id);
-        if (optionalFoundShip.isPresent()) {
-            Ship foundShip = optionalFoundShip.get();
-            foundShip.update(ship);
-            return ResponseEntity.ok(shipService.update(foundShip));
+        Set<Long> expectedVersions = null;
+        if (ifMatch != null && !"*".equals(ifMatch.trim())) {
+            expectedVersions = parseVersions(ifMatch);
+            // Таких ETag не выдается ни одному кораблю, значит совпадения быть не может
+            if (expectedVersions.isEmpty())
+                return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
+
+        Optional<Ship> result;
+        try {
+            result = shipService.update(id, ship, expectedVersions);
+        } catch (OptimisticLockException e) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
         }
+        if (!result.isPresent())
+            return ResponseEntity.notFound().build();
+
+        return ResponseEntity.ok().eTag(eTag(result.get())).body(result.get());
+    }
+
+    private static String eTag(Ship ship) {
+        return "\"" + ship.getVersion() + "\"";
+    }
+
+    /**
+     * Версии из списка entity-tag заголовка If-Match (например "3", "4"); изменение выполняется,
+     * если корабль имеет любую из них. Слабые и не выданные кораблям ETag пропускаются
+     */
+    private static Set<Long> parseVersions(String ifMatch) {
+        Set<Long> versions = new HashSet<>();
+        Matcher matcher = ENTITY_TAG.matcher(ifMatch);
+        while (matcher.find()) {
+            if (matcher.group(1) != null)
+                continue;
+            try {
+                versions.add(Long.valueOf(matcher.group(2)));
+            } catch (NumberFormatException ignored) {
+                // Такой ETag не выдается ни одному кораблю
+            }
+        }
+        return versions;
+    }
 
-        return ResponseEntity.notFound().build();
+    /**
+     * ETag списка кораблей: меняется, если меняется состав, порядок или версия любого корабля в списке
+     */
+    private static String listETag(Iterable<Ship> ships, Integer total) {
+        StringBuilder versions = new StringBuilder();
+        for (Ship ship : ships)
+            versions.append(ship.getId()).append(':').append(ship.getVersion()).append(',');
+        if (total != null)
+            versions.append(total);
+        return "\"" + DigestUtils.md5DigestAsHex(versions.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
     }
 }
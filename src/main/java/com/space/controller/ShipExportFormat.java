@@ -0,0 +1,98 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.space.model.Ship;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Objects;
+
+/**
+ * Форматы выгрузки кораблей: по одному кораблю на строку
+ */
+public enum ShipExportFormat {
+    NDJSON("application/x-ndjson") {
+        @Override
+        public ShipWriter writer(ObjectMapper objectMapper, Writer out) throws IOException {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            return new ShipWriter() {
+                @Override
+                public void write(Ship ship) throws IOException {
+                    generator.writeObject(ship);
+                    generator.writeRaw('\n');
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    generator.flush();
+                }
+            };
+        }
+    },
+    CSV("text/csv") {
+        @Override
+        public ShipWriter writer(ObjectMapper objectMapper, Writer out) throws IOException {
+            out.write("id,name,planet,shipType,prodDate,isUsed,speed,crewSize,rating\n");
+            return new ShipWriter() {
+                @Override
+                public void write(Ship ship) throws IOException {
+                    out.write(String.valueOf(ship.getId()));
+                    out.write(',');
+                    out.write(quote(ship.getName()));
+                    out.write(',');
+                    out.write(quote(ship.getPlanet()));
+                    out.write(',');
+                    out.write(text(ship.getShipType()));
+                    out.write(',');
+                    out.write(Objects.isNull(ship.getProdDate()) ? "" : String.valueOf(ship.getProdDate().getTime()));
+                    out.write(',');
+                    out.write(text(ship.getUsed()));
+                    out.write(',');
+                    out.write(text(ship.getSpeed()));
+                    out.write(',');
+                    out.write(text(ship.getCrewSize()));
+                    out.write(',');
+                    out.write(text(ship.getRating()));
+                    out.write('\n');
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    out.flush();
+                }
+            };
+        }
+    };
+
+    private final String contentType;
+
+    ShipExportFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public abstract ShipWriter writer(ObjectMapper objectMapper, Writer out) throws IOException;
+
+    public interface ShipWriter {
+        void write(Ship ship) throws IOException;
+
+        void flush() throws IOException;
+    }
+
+    private static String text(Object value) {
+        return Objects.isNull(value) ? "" : value.toString();
+    }
+
+    private static String quote(String s) {
+        if (Objects.isNull(s))
+            return "";
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0)
+            return s;
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+}
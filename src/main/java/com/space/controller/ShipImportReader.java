@@ -0,0 +1,167 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.space.model.Ship;
+import com.space.model.ShipType;
+import com.space.service.ShipImportRow;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+/**
+ * Построчно разбирает загружаемый файл в формате NDJSON или CSV (с заголовком, как у выгрузки).
+ * Строки читаются по мере запроса, поэтому файл целиком в памяти не хранится.
+ * Запись CSV, как и в выгрузке, может занимать несколько строк: перевод строки внутри значения в кавычках
+ * запись не завершает.
+ */
+public class ShipImportReader implements Iterator<ShipImportRow> {
+
+    private final BufferedReader in;
+    private final ShipExportFormat format;
+    private final ObjectMapper objectMapper;
+
+    private Map<String, Integer> columns;
+    // Прочитано строк файла и номер строки, с которой начинается текущая запись
+    private long linesRead;
+    private long lineNumber;
+    private String nextLine;
+
+    public ShipImportReader(BufferedReader in, ShipExportFormat format, ObjectMapper objectMapper) {
+        this.in = in;
+        this.format = format;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (nextLine == null) {
+                long start = linesRead + 1;
+                String line = format == ShipExportFormat.CSV ? readCsvRecord() : readLine();
+                if (line == null)
+                    return false;
+                if (line.trim().isEmpty())
+                    continue;
+                if (format == ShipExportFormat.CSV && columns == null) {
+                    readHeader(line);
+                    continue;
+                }
+                nextLine = line;
+                lineNumber = start;
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public ShipImportRow next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        String line = nextLine;
+        nextLine = null;
+        try {
+            Ship ship = format == ShipExportFormat.CSV ? parseCsv(line) : objectMapper.readValue(line, Ship.class);
+            return ShipImportRow.of(lineNumber, ship);
+        } catch (IOException | IllegalArgumentException e) {
+            return ShipImportRow.failed(lineNumber, "Malformed line: " + e.getMessage());
+        }
+    }
+
+    private String readLine() throws IOException {
+        String line = in.readLine();
+        if (line != null)
+            linesRead++;
+        return line;
+    }
+
+    /**
+     * Читает запись CSV до перевода строки вне кавычек
+     *
+     * @return Запись без завершающего перевода строки или null в конце файла
+     */
+    private String readCsvRecord() throws IOException {
+        StringBuilder record = new StringBuilder();
+        boolean quoted = false;
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                linesRead++;
+                if (!quoted) {
+                    int end = record.length();
+                    if (end > 0 && record.charAt(end - 1) == '\r')
+                        record.setLength(end - 1);
+                    return record.toString();
+                }
+            } else if (c == '"') {
+                // Удвоенная кавычка внутри значения переключает признак дважды и его не меняет
+                quoted = !quoted;
+            }
+            record.append((char) c);
+        }
+        if (record.length() == 0)
+            return null;
+        linesRead++;
+        return record.toString();
+    }
+
+    private void readHeader(String line) {
+        columns = new HashMap<>();
+        List<String> names = splitCsv(line);
+        for (int i = 0; i < names.size(); i++)
+            columns.put(names.get(i).trim(), i);
+    }
+
+    private Ship parseCsv(String line) {
+        List<String> values = splitCsv(line);
+        String prodDate = column(values, "prodDate");
+        String isUsed = column(values, "isUsed");
+        String speed = column(values, "speed");
+        String crewSize = column(values, "crewSize");
+        String shipType = column(values, "shipType");
+        return new Ship(column(values, "name"), column(values, "planet"),
+                shipType == null ? null : ShipType.valueOf(shipType),
+                prodDate == null ? null : new Date(Long.parseLong(prodDate)),
+                isUsed == null ? null : Boolean.valueOf(isUsed),
+                speed == null ? null : Double.valueOf(speed),
+                crewSize == null ? null : Integer.valueOf(crewSize));
+    }
+
+    private String column(List<String> values, String name) {
+        Integer index = columns.get(name);
+        if (index == null || index >= values.size() || values.get(index).isEmpty())
+            return null;
+        return values.get(index);
+    }
+
+    private static List<String> splitCsv(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+}
@@ -1,5 +1,11 @@
 package com.space.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import javax.persistence.*;
 import javax.persistence.criteria.CriteriaBuilder;
 import java.math.BigDecimal;
@@ -10,6 +16,10 @@ import java.util.GregorianCalendar;
 import java.util.Objects;
 
 @Entity(name = "ship")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@JsonSerialize(using = ShipJson.Serializer.class)
+@JsonDeserialize(using = ShipJson.Deserializer.class)
 public class Ship {
 
     private static final Calendar YEAR2800 = new GregorianCalendar(2800, 1, 1);
@@ -17,6 +27,11 @@ public class Ship {
 
     private static final int MAX_LENGTH_STRING = 50;
 
+    /**
+     * Год, от которого отсчитывается возраст корабля при вычислении рейтинга
+     */
+    public static final int RATING_YEAR = 3019;
+
     public Ship() {
     }
 
@@ -34,6 +49,13 @@ public class Ship {
         this.rating = rating;
     }
 
+    public Ship(Long id, String name, String planet, ShipType shipType,
+                Date prodDate, Boolean isUsed, Double speed, Integer crewSize,
+                Double rating, Long version) {
+        this(id, name, planet, shipType, prodDate, isUsed, speed, crewSize, rating);
+        this.version = version;
+    }
+
     public Ship(String name, String planet, ShipType shipType,
                 Date prodDate, Boolean isUsed, Double speed, Integer crewSize
     ) {
@@ -46,8 +68,12 @@ public class Ship {
         this.crewSize = crewSize;
     }
 
+    // Id выдаются блоками из таблицы ship_id_sequence, поэтому Hibernate может объединять вставки в пакеты
+    // Блок берется отдельной транзакцией на втором соединении пула (см. ShipInsertPermits)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "ship_id")
+    @TableGenerator(name = "ship_id", table = "ship_id_sequence", pkColumnName = "name",
+            valueColumnName = "next_val", pkColumnValue = "ship", allocationSize = 100)
     private Long id;
 
     private String name;
@@ -67,6 +93,15 @@ public class Ship {
 
     private Double rating;
 
+    // Увеличивается при каждом изменении корабля, клиенту передается в заголовке ETag, а не в теле
+    @Version
+    @JsonIgnore
+    private Long version;
+
+    // Номер последнего изменения корабля в последовательности изменений флота, по нему строится выдача изменений
+    @JsonIgnore
+    private Long changeSeq;
+
     public Long getId() {
         return id;
     }
@@ -103,6 +138,18 @@ public class Ship {
         return rating;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public Long getChangeSeq() {
+        return changeSeq;
+    }
+
+    public void setChangeSeq(Long changeSeq) {
+        this.changeSeq = changeSeq;
+    }
+
     @Deprecated
     public boolean validate() {
 
@@ -175,6 +222,14 @@ public class Ship {
         return true;
     }
 
+    /**
+     * Проверяет, задано ли хотя бы одно поле для изменения
+     */
+    public boolean hasUpdates() {
+        return name != null || planet != null || shipType != null || prodDate != null || isUsed != null
+                || speed != null || crewSize != null;
+    }
+
     private boolean isValidSpeed(Double speed, boolean isNullable) {
         if (speed == null)
             return isNullable;
@@ -213,13 +268,38 @@ public class Ship {
     private void calculateRating() {
         double k = isUsed ? 0.5 : 1;
         int prodDateYear = prodDate.getYear() + 1900;
-        int year3019 = YEAR3019.get(Calendar.YEAR);
-        rating = 80 * speed * k / (year3019 - prodDateYear + 1);
+        rating = 80 * speed * k / (RATING_YEAR - prodDateYear + 1);
         BigDecimal bd = new BigDecimal(rating.toString());
         bd = bd.setScale(2, RoundingMode.HALF_UP);
         rating = bd.doubleValue();
     }
 
+    /**
+     * Пересчитывает рейтинг по текущим значениям полей, если он был вычислен не в Java, а запросом к БД:
+     * БД округляет DOUBLE по своим правилам, и на границе округления результат отличается на 0.01
+     *
+     * @return true, если рейтинг изменился
+     */
+    public boolean recalculateRating() {
+        if (Objects.isNull(speed) || Objects.isNull(isUsed) || Objects.isNull(prodDate))
+            return false;
+        Double stored = rating;
+        calculateRating();
+        return !Objects.equals(stored, rating);
+    }
+
+    /**
+     * Подготавливает корабль, прошедший {@link #isValidForCreate()}, к сохранению:
+     * сбрасывает id, заполняет значения по умолчанию и вычисляет рейтинг
+     */
+    public void prepareForCreate() {
+        id = null;
+        version = null;
+        if (Objects.isNull(isUsed))
+            isUsed = false;
+        calculateRating();
+    }
+
     public void update(Ship newShip) {
         String name = newShip.getName();
         if (isValidString(name)) {
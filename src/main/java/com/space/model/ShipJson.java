@@ -0,0 +1,231 @@
+package com.space.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Date;
+
+/**
+ * JSON корабля без отражения: поля пишутся прямо в JsonGenerator, а разбираются одним проходом по токенам.
+ * Формат совпадает с тем, что Jackson строил по полям класса: те же имена и порядок полей,
+ * null для незаданных значений, дата числом миллисекунд; version и changeSeq в JSON не попадают.
+ * Разбор так же прощает числа в строках, дату строкой и неизвестные поля.
+ * Сериализатор, созданный с {@link Cache}, берет из него готовый JSON сохраненного корабля,
+ * пока версия корабля не изменилась.
+ */
+public final class ShipJson {
+
+    // Имена полей кодируются в UTF-8 один раз, генератор копирует готовые байты
+    private static final SerializedString ID = new SerializedString("id");
+    private static final SerializedString NAME = new SerializedString("name");
+    private static final SerializedString PLANET = new SerializedString("planet");
+    private static final SerializedString SHIP_TYPE = new SerializedString("shipType");
+    private static final SerializedString PROD_DATE = new SerializedString("prodDate");
+    private static final SerializedString IS_USED = new SerializedString("isUsed");
+    private static final SerializedString SPEED = new SerializedString("speed");
+    private static final SerializedString CREW_SIZE = new SerializedString("crewSize");
+    private static final SerializedString RATING = new SerializedString("rating");
+
+    private static final ShipType[] SHIP_TYPES = ShipType.values();
+
+    private ShipJson() {
+    }
+
+    /**
+     * Готовый JSON кораблей по id и версии
+     */
+    public interface Cache {
+
+        /**
+         * @return JSON корабля той же версии или null
+         */
+        SerializableString get(Ship ship);
+
+        void put(Ship ship, SerializableString json);
+    }
+
+    public static class Serializer extends StdSerializer<Ship> {
+
+        // Без кэша корабль кодируется каждый раз
+        private final Cache jsonCache;
+
+        public Serializer() {
+            this(null);
+        }
+
+        public Serializer(Cache jsonCache) {
+            super(Ship.class);
+            this.jsonCache = jsonCache;
+        }
+
+        @Override
+        public void serialize(Ship ship, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            // Новый корабль без id и версии кэшировать не по чему
+            if (jsonCache == null || ship.getId() == null || ship.getVersion() == null || gen.getCodec() == null) {
+                write(ship, gen, provider);
+                return;
+            }
+
+            SerializableString json = jsonCache.get(ship);
+            if (json == null) {
+                json = new SerializedString(encode(ship, gen, provider));
+                jsonCache.put(ship, json);
+            }
+            // Пустое значение ставит запятую перед объектом, затем байты готового JSON копируются в буфер ответа
+            gen.writeRawValue("");
+            gen.writeRaw(json);
+        }
+
+        private String encode(Ship ship, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            StringWriter out = new StringWriter(256);
+            try (JsonGenerator buffer = gen.getCodec().getFactory().createGenerator(out)) {
+                write(ship, buffer, provider);
+            }
+            return out.toString();
+        }
+
+        private void write(Ship ship, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject(ship);
+
+            gen.writeFieldName(ID);
+            if (ship.getId() == null)
+                gen.writeNull();
+            else
+                gen.writeNumber(ship.getId().longValue());
+
+            gen.writeFieldName(NAME);
+            gen.writeString(ship.getName());
+            gen.writeFieldName(PLANET);
+            gen.writeString(ship.getPlanet());
+
+            gen.writeFieldName(SHIP_TYPE);
+            if (ship.getShipType() == null)
+                gen.writeNull();
+            else
+                gen.writeString(ship.getShipType().name());
+
+            gen.writeFieldName(PROD_DATE);
+            if (ship.getProdDate() == null)
+                gen.writeNull();
+            else
+                provider.defaultSerializeDateValue(ship.getProdDate(), gen);
+
+            gen.writeFieldName(IS_USED);
+            if (ship.getUsed() == null)
+                gen.writeNull();
+            else
+                gen.writeBoolean(ship.getUsed());
+
+            gen.writeFieldName(SPEED);
+            writeDouble(gen, ship.getSpeed());
+
+            gen.writeFieldName(CREW_SIZE);
+            if (ship.getCrewSize() == null)
+                gen.writeNull();
+            else
+                gen.writeNumber(ship.getCrewSize().intValue());
+
+            gen.writeFieldName(RATING);
+            writeDouble(gen, ship.getRating());
+
+            gen.writeEndObject();
+        }
+
+        private static void writeDouble(JsonGenerator gen, Double value) throws IOException {
+            if (value == null)
+                gen.writeNull();
+            else
+                gen.writeNumber(value.doubleValue());
+        }
+    }
+
+    public static class Deserializer extends StdDeserializer<Ship> {
+
+        public Deserializer() {
+            super(Ship.class);
+        }
+
+        @Override
+        public Ship deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            if (!p.isExpectedStartObjectToken())
+                return (Ship) ctxt.handleUnexpectedToken(Ship.class, p);
+
+            Long id = null;
+            String name = null;
+            String planet = null;
+            ShipType shipType = null;
+            Date prodDate = null;
+            Boolean isUsed = null;
+            Double speed = null;
+            Integer crewSize = null;
+            Double rating = null;
+
+            for (String field = p.nextFieldName(); field != null; field = p.nextFieldName()) {
+                JsonToken token = p.nextToken();
+                boolean isNull = token == JsonToken.VALUE_NULL;
+                // Пустая строка вместо числа, даты или признака означает отсутствие значения
+                boolean isBlank = isNull || token == JsonToken.VALUE_STRING && p.getText().trim().isEmpty();
+                switch (field) {
+                    case "id":
+                        id = isBlank ? null : _parseLongPrimitive(p, ctxt);
+                        break;
+                    case "name":
+                        name = isNull ? null : _parseString(p, ctxt);
+                        break;
+                    case "planet":
+                        planet = isNull ? null : _parseString(p, ctxt);
+                        break;
+                    case "shipType":
+                        shipType = isNull ? null : parseShipType(p, ctxt);
+                        break;
+                    case "prodDate":
+                        prodDate = isBlank ? null : _parseDate(p, ctxt);
+                        break;
+                    case "isUsed":
+                        isUsed = isBlank ? null : _parseBooleanPrimitive(p, ctxt);
+                        break;
+                    case "speed":
+                        speed = isBlank ? null : _parseDoublePrimitive(p, ctxt);
+                        break;
+                    case "crewSize":
+                        crewSize = isBlank ? null : _parseIntPrimitive(p, ctxt);
+                        break;
+                    case "rating":
+                        rating = isBlank ? null : _parseDoublePrimitive(p, ctxt);
+                        break;
+                    default:
+                        // Неизвестные поля, а также version и changeSeq, пропускаются
+                        p.skipChildren();
+                }
+            }
+            return new Ship(id, name, planet, shipType, prodDate, isUsed, speed, crewSize, rating);
+        }
+
+        private static ShipType parseShipType(JsonParser p, DeserializationContext ctxt) throws IOException {
+            if (p.hasToken(JsonToken.VALUE_STRING)) {
+                String text = p.getText();
+                for (ShipType type : SHIP_TYPES)
+                    if (type.name().equals(text))
+                        return type;
+                return (ShipType) ctxt.handleWeirdStringValue(ShipType.class, text, "not one of the ship types");
+            }
+            // Как и для любого перечисления, Jackson принимал и порядковый номер
+            if (p.hasToken(JsonToken.VALUE_NUMBER_INT)) {
+                int index = p.getIntValue();
+                if (index >= 0 && index < SHIP_TYPES.length)
+                    return SHIP_TYPES[index];
+                return (ShipType) ctxt.handleWeirdNumberValue(ShipType.class, index, "not a ship type index");
+            }
+            return (ShipType) ctxt.handleUnexpectedToken(ShipType.class, p);
+        }
+    }
+}
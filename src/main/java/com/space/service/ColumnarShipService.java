@@ -0,0 +1,123 @@
+package com.space.service;
+
+import com.space.model.Ship;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Сервис, отвечающий на запросы выдачи и количества из колоночного снимка {@link ShipColumnStore}
+ * без обращения к БД. Изменения выполняются через {@link ShipServiceImpl} и сразу переносятся в снимок:
+ * изменение по id - самим кораблем, массовые изменения и импорт - по последовательности изменений.
+ * Включается профилем columnar.
+ */
+@Service
+@Primary
+@Profile("columnar")
+public class ColumnarShipService implements ShipService {
+
+    @Autowired
+    @Qualifier("shipServiceImpl")
+    private ShipService shipService;
+
+    @Autowired
+    private ShipColumnStore columnStore;
+
+    @Override
+    public Iterable<Ship> getShips(ShipDTO shipDTO) {
+        return getPage(shipDTO).getItems();
+    }
+
+    @Override
+    public List<Ship> getShipsAfter(ShipDTO shipDTO, ShipCursor cursor) {
+        return columnStore.pageAfter(shipDTO, cursor, getPageSize(shipDTO));
+    }
+
+    @Override
+    public ShipPage getPage(ShipDTO shipDTO) {
+        Integer pageNumber = shipDTO.getPageNumber();
+        if (Objects.isNull(pageNumber))
+            pageNumber = 0;
+        return columnStore.page(shipDTO, pageNumber, getPageSize(shipDTO));
+    }
+
+    @Override
+    public void exportShips(ShipDTO shipDTO, Consumer<Ship> consumer) {
+        shipService.exportShips(shipDTO, consumer);
+    }
+
+    @Override
+    public Optional<Ship> findById(Long id) {
+        return shipService.findById(id);
+    }
+
+    @Override
+    public Integer getCount(ShipDTO shipDTO) {
+        return columnStore.count(shipDTO);
+    }
+
+    @Override
+    public Ship save(Ship ship) {
+        Ship result = shipService.save(ship);
+        if (Objects.nonNull(result))
+            columnStore.put(result);
+        return result;
+    }
+
+    @Override
+    public ShipImportResult importShips(Iterator<ShipImportRow> rows, int batchSize) {
+        ShipImportResult result = shipService.importShips(rows, batchSize);
+        columnStore.catchUp();
+        return result;
+    }
+
+    @Override
+    public boolean deleteById(Long id) {
+        boolean deleted = shipService.deleteById(id);
+        if (deleted)
+            columnStore.remove(id);
+        return deleted;
+    }
+
+    @Override
+    public Optional<Ship> update(Long id, Ship patch, Collection<Long> expectedVersions) {
+        Optional<Ship> result = shipService.update(id, patch, expectedVersions);
+        result.ifPresent(columnStore::put);
+        return result;
+    }
+
+    @Override
+    public int updateShips(ShipDTO shipDTO, Ship patch) {
+        int updated = shipService.updateShips(shipDTO, patch);
+        columnStore.catchUp();
+        return updated;
+    }
+
+    @Override
+    public int deleteShips(ShipDTO shipDTO) {
+        int deleted = shipService.deleteShips(shipDTO);
+        columnStore.catchUp();
+        return deleted;
+    }
+
+    @Override
+    public ShipChanges getChanges(long since, int limit) {
+        return shipService.getChanges(since, limit);
+    }
+
+    private int getPageSize(ShipDTO shipDTO) {
+        Integer pageSize = shipDTO.getPageSize();
+        if (Objects.isNull(pageSize))
+            pageSize = ShipDTO.DEFAULT_PAGE_SIZE;
+        return pageSize;
+    }
+}
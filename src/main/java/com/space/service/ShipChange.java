@@ -0,0 +1,90 @@
+package com.space.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.space.model.Ship;
+
+/**
+ * Изменение флота, о котором сервис сообщает подписчикам {@link ShipChangePublisher} после коммита
+ * и которое возвращает выдача изменений {@link ShipChanges}
+ */
+public class ShipChange {
+
+    public enum Type {
+        CREATE,
+        UPDATE,
+        DELETE,
+        // Массовое изменение затронуло неизвестный набор кораблей, подписчикам нужно перечитать выдачу
+        RELOAD
+    }
+
+    private Long seq;
+    private Type type;
+    private Long id;
+    private Ship ship;
+    private Ship previous;
+
+    public ShipChange() {
+    }
+
+    private ShipChange(Long seq, Type type, Long id, Ship ship, Ship previous) {
+        this.seq = seq;
+        this.type = type;
+        this.id = id;
+        this.ship = ship;
+        this.previous = previous;
+    }
+
+    public static ShipChange created(Ship ship) {
+        return new ShipChange(ship.getChangeSeq(), Type.CREATE, ship.getId(), ship, null);
+    }
+
+    /**
+     * Изменение, прежнее состояние которого неизвестно (например, прочитанное из последовательности изменений)
+     */
+    public static ShipChange updated(Ship ship) {
+        return updated(ship, null);
+    }
+
+    public static ShipChange updated(Ship ship, Ship previous) {
+        return new ShipChange(ship.getChangeSeq(), Type.UPDATE, ship.getId(), ship, previous);
+    }
+
+    public static ShipChange deleted(Long id, Long seq) {
+        return new ShipChange(seq, Type.DELETE, id, null, null);
+    }
+
+    public static ShipChange reload(Long seq) {
+        return new ShipChange(seq, Type.RELOAD, null, null, null);
+    }
+
+    /**
+     * @return Номер изменения в последовательности изменений флота; одним номером помечаются
+     * все корабли, измененные одной транзакцией
+     */
+    public Long getSeq() {
+        return seq;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * @return Корабль после изменения; для удаления и RELOAD - null
+     */
+    public Ship getShip() {
+        return ship;
+    }
+
+    /**
+     * @return Корабль до изменения, если он известен; в выдачу изменений не попадает
+     */
+    @JsonIgnore
+    public Ship getPrevious() {
+        return previous;
+    }
+}
@@ -0,0 +1,195 @@
+package com.space.service;
+
+import com.space.model.Ship;
+import org.hibernate.Session;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Последовательность изменений флота. Каждая изменяющая транзакция получает следующий номер и помечает им
+ * измененные корабли (столбец changeSeq), а удаленные - записями в ship_tombstone.
+ * Номер выдается обновлением строки 'change' в ship_id_sequence, блокировка строки держится до коммита,
+ * поэтому транзакции фиксируются в порядке номеров: прочитавший изменения до номера N
+ * уже не увидит позже изменение с меньшим номером.
+ * Номер берется последним, после блокировки изменяемых кораблей: все транзакции блокируют строки
+ * в одном порядке (корабли, затем счетчик) и не могут взаимно заблокироваться, а счетчик, через который
+ * проходят все изменения по очереди, занят только до коммита. Вставляемые корабли до получения номера
+ * помечаются временной меткой (см. {@link #marker()} и {@link #assign(long)}).
+ */
+@Component
+public class ShipChangeLog {
+
+    private static final String NEXT_SEQ = "update ship_id_sequence set next_val = next_val + 1 where name = 'change'";
+    private static final String CURRENT_SEQ = "select next_val from ship_id_sequence where name = 'change'";
+    private static final String ASSIGN_SEQ = "update ship set changeSeq = ? where changeSeq = ?";
+    private static final String INSERT_TOMBSTONE = "insert into ship_tombstone(id, changeSeq) values (?, ?)";
+
+    private static final String SHIPS_AFTER = "select s from ship s where s.changeSeq > :since " +
+            "order by s.changeSeq, s.id";
+    private static final String SHIPS_AT = "select s from ship s where s.changeSeq = :seq order by s.id";
+    private static final String CHANGED_SHIPS = "select new com.space.model.Ship(s.id, s.name, s.planet, " +
+            "s.shipType, s.prodDate, s.isUsed, s.speed, s.crewSize, s.rating, s.version) from ship s " +
+            "where s.changeSeq = :seq";
+    private static final String TOMBSTONES_AFTER = "select id, changeSeq from ship_tombstone where changeSeq > ? " +
+            "order by changeSeq, id";
+    private static final String TOMBSTONES_AT = "select id, changeSeq from ship_tombstone where changeSeq = ? " +
+            "order by id";
+
+    private static final Comparator<ShipChange> BY_SEQ = Comparator.comparing(ShipChange::getSeq)
+            .thenComparing(ShipChange::getId);
+
+    @PersistenceContext
+    private EntityManager em;
+
+    /**
+     * Выдает номер изменения текущей транзакции. Вызывается внутри изменяющей транзакции
+     */
+    public long next() {
+        return em.unwrap(Session.class).doReturningWork(connection -> {
+            try (PreparedStatement update = connection.prepareStatement(NEXT_SEQ);
+                 PreparedStatement select = connection.prepareStatement(CURRENT_SEQ)) {
+                update.executeUpdate();
+                try (ResultSet resultSet = select.executeQuery()) {
+                    resultSet.next();
+                    return resultSet.getLong(1);
+                }
+            }
+        });
+    }
+
+    /**
+     * Последний закоммиченный номер изменения: номер незавершенной транзакции больше него,
+     * потому что она держит счетчик до коммита
+     */
+    public long current() {
+        return em.unwrap(Session.class).doReturningWork(connection -> {
+            try (PreparedStatement select = connection.prepareStatement(CURRENT_SEQ);
+                 ResultSet resultSet = select.executeQuery()) {
+                resultSet.next();
+                return resultSet.getLong(1);
+            }
+        });
+    }
+
+    /**
+     * Временный номер изменения для кораблей, вставляемых текущей транзакцией до получения номера.
+     * Отрицательный и случайный: не совпадает ни с одним номером, не попадает в выдачу изменений
+     * и практически не совпадает с меткой другой транзакции
+     */
+    public long marker() {
+        return ThreadLocalRandom.current().nextLong(Long.MIN_VALUE, 0);
+    }
+
+    /**
+     * Выдает номер изменения текущей транзакции и переносит его на корабли, помеченные marker.
+     * Вызывается последним перед коммитом, после записи всех кораблей
+     */
+    public long assign(long marker) {
+        long seq = next();
+        em.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(ASSIGN_SEQ)) {
+                statement.setLong(1, seq);
+                statement.setLong(2, marker);
+                statement.executeUpdate();
+            }
+        });
+        return seq;
+    }
+
+    /**
+     * Корабли, измененные текущей транзакцией под номером seq, неуправляемыми объектами.
+     * Вызывается внутри изменяющей транзакции после массового изменения, чтобы узнать, какие корабли оно затронуло
+     */
+    public List<Ship> changedShips(long seq) {
+        return em.createQuery(CHANGED_SHIPS, Ship.class)
+                .setParameter("seq", seq)
+                .getResultList();
+    }
+
+    /**
+     * Записывает надгробия удаленных кораблей, чтобы клиенты узнали об удалении из выдачи изменений
+     */
+    public void tombstone(Collection<Long> ids, long seq) {
+        if (ids.isEmpty())
+            return;
+        em.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_TOMBSTONE)) {
+                for (Long id : ids) {
+                    statement.setLong(1, id);
+                    statement.setLong(2, seq);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        });
+    }
+
+    /**
+     * Изменения после номера since, не больше limit. Изменения одной транзакции не разделяются между страницами:
+     * неполная группа переносится на следующую страницу, а группа больше limit возвращается целиком
+     */
+    public ShipChanges changesSince(long since, int limit) {
+        // Изменения и надгробия читаются индексом по (changeSeq, id), каждое не больше limit + 1
+        List<ShipChange> changes = new ArrayList<>(limit + 1);
+        em.createQuery(SHIPS_AFTER, Ship.class)
+                .setParameter("since", since)
+                .setMaxResults(limit + 1)
+                .getResultList()
+                .forEach(ship -> changes.add(toChange(ship)));
+        changes.addAll(tombstones(TOMBSTONES_AFTER, since, limit + 1));
+        changes.sort(BY_SEQ);
+
+        if (changes.size() <= limit)
+            return new ShipChanges(changes, changes.isEmpty() ? since : lastSeq(changes), false);
+
+        List<ShipChange> page = new ArrayList<>(changes.subList(0, limit));
+        long lastSeq = lastSeq(page);
+        if (changes.get(limit).getSeq() == lastSeq) {
+            page.removeIf(change -> change.getSeq() == lastSeq);
+            if (page.isEmpty())
+                page = changesAt(lastSeq);
+        }
+        return new ShipChanges(page, lastSeq(page), true);
+    }
+
+    private List<ShipChange> changesAt(long seq) {
+        List<ShipChange> changes = new ArrayList<>();
+        em.createQuery(SHIPS_AT, Ship.class)
+                .setParameter("seq", seq)
+                .getResultList()
+                .forEach(ship -> changes.add(toChange(ship)));
+        changes.addAll(tombstones(TOMBSTONES_AT, seq, Integer.MAX_VALUE));
+        changes.sort(BY_SEQ);
+        return changes;
+    }
+
+    private List<ShipChange> tombstones(String sql, long seq, int limit) {
+        return em.unwrap(Session.class).doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setLong(1, seq);
+                statement.setMaxRows(limit);
+                List<ShipChange> result = new ArrayList<>();
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next())
+                        result.add(ShipChange.deleted(resultSet.getLong(1), resultSet.getLong(2)));
+                }
+                return result;
+            }
+        });
+    }
+
+    private static ShipChange toChange(Ship ship) {
+        // Версия 0 означает, что корабль не менялся с создания, значит после since он и был создан
+        return Objects.equals(ship.getVersion(), 0L) ? ShipChange.created(ship) : ShipChange.updated(ship);
+    }
+
+    private static long lastSeq(List<ShipChange> changes) {
+        return changes.get(changes.size() - 1).getSeq();
+    }
+}
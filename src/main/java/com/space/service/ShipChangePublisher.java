@@ -0,0 +1,42 @@
+package com.space.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Рассылает изменения флота слушателям. Слушатели вызываются в потоке, выполнившем изменение,
+ * поэтому не должны блокироваться: медленную доставку они выполняют в своих потоках.
+ * События ApplicationContext здесь не подходят: сервис живет в корневом контексте,
+ * а слушатели из контекста DispatcherServlet его событий не получают.
+ */
+@Component
+public class ShipChangePublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(ShipChangePublisher.class);
+
+    private final List<Consumer<ShipChange>> listeners = new CopyOnWriteArrayList<>();
+
+    public void addListener(Consumer<ShipChange> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<ShipChange> listener) {
+        listeners.remove(listener);
+    }
+
+    public void publish(ShipChange change) {
+        for (Consumer<ShipChange> listener : listeners) {
+            // Изменение уже записано в БД, ошибка слушателя не должна превращаться в ошибку запроса
+            try {
+                listener.accept(change);
+            } catch (RuntimeException e) {
+                log.warn("Ship change listener failed", e);
+            }
+        }
+    }
+}
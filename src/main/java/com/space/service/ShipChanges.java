@@ -0,0 +1,38 @@
+package com.space.service;
+
+import java.util.List;
+
+/**
+ * Страница выдачи изменений флота после водяного знака: изменения по возрастанию номера
+ * и новый водяной знак, с которого нужно запрашивать следующую страницу
+ */
+public class ShipChanges {
+
+    private List<ShipChange> changes;
+    private Long watermark;
+    private Boolean hasMore;
+
+    public ShipChanges() {
+    }
+
+    public ShipChanges(List<ShipChange> changes, Long watermark, Boolean hasMore) {
+        this.changes = changes;
+        this.watermark = watermark;
+        this.hasMore = hasMore;
+    }
+
+    public List<ShipChange> getChanges() {
+        return changes;
+    }
+
+    public Long getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * @return true, если после водяного знака есть еще изменения
+     */
+    public Boolean getHasMore() {
+        return hasMore;
+    }
+}
@@ -0,0 +1,599 @@
+package com.space.service;
+
+import com.space.controller.ShipOrder;
+import com.space.model.Ship;
+import com.space.model.ShipType;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Колоночный снимок таблицы ship в памяти. Каждое поле хранится в отдельном массиве примитивов,
+ * planet кодируется словарем, shipType хранится как номер значения enum.
+ * Фильтры {@link ShipDTO} проверяются простым циклом по массивам, а страница и количество
+ * вычисляются за один проход по заранее отсортированной перестановке строк.
+ * Перестановки поддерживаются при каждом изменении: строка корабля удаляется из них и вставляется
+ * на место, найденное двоичным поиском, поэтому запись не заставляет следующее чтение сортировать таблицу.
+ * Массовые изменения и импорт переносятся в снимок по последовательности изменений ({@link #catchUp()}).
+ * Подстроки name и planet сравниваются в нормализованном виде ({@link ShipTrigramIndex#normalize(String)}),
+ * как их сравнивает LIKE при регистронезависимой сортировке БД.
+ */
+@Component
+@Profile("columnar")
+public class ShipColumnStore implements InitializingBean {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final byte NULL_BYTE = -1;
+    private static final int NULL_INT = Integer.MIN_VALUE;
+    private static final long NULL_LONG = Long.MIN_VALUE;
+    private static final ShipType[] SHIP_TYPES = ShipType.values();
+    private static final ShipOrder[] ORDERS = ShipOrder.values();
+
+    // Сколько изменений читается из последовательности за один раз при догонке снимка
+    private static final int CATCH_UP_PAGE = 1000;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Autowired
+    private ShipChangeLog changeLog;
+
+    // Изменения читаются с основной БД: снимок должен сразу видеть только что записанное
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock rebuildLock = new ReentrantLock();
+
+    // Изменения, пришедшие во время чтения таблицы при перестроении; применяются к новому снимку
+    private List<Runnable> pending;
+
+    private int size;
+    private long[] ids;
+    private String[] names;
+    private String[] normalizedNames;
+    private int[] planets;
+    private byte[] shipTypes;
+    private long[] prodDates;
+    private byte[] used;
+    private double[] speeds;
+    private int[] crewSizes;
+    private double[] ratings;
+    private long[] versions;
+
+    private Map<Long, Integer> rowById;
+
+    // Словарь планет: код -> название и название -> код
+    private List<String> planetDictionary;
+    private List<String> normalizedPlanets;
+    private Map<String, Integer> planetCodes;
+
+    // Строки, отсортированные по полю ShipOrder и id; заняты первые size элементов
+    private final int[][] sorted = new int[ORDERS.length][];
+
+    // Номер последнего изменения, которое уже есть в снимке
+    private long watermark;
+
+    @Override
+    public void afterPropertiesSet() {
+        rebuild();
+    }
+
+    /**
+     * Перечитывает таблицу. Таблица читается без блокировки, чтобы не останавливать выдачу на время запроса;
+     * изменения, пришедшие за это время, запоминаются и применяются к новому снимку
+     */
+    public void rebuild() {
+        rebuildLock.lock();
+        try {
+            lock.writeLock().lock();
+            try {
+                pending = new ArrayList<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            List<Object[]> rows = null;
+            long loadedWatermark = 0;
+            try {
+                // Номер читается до строк: изменения после него, даже не попавшие в строки, найдет догонка
+                Object[] loaded = transactionTemplate.execute(status -> new Object[]{changeLog.current(),
+                        em.createQuery("select s.id, s.name, s.planet, s.shipType, s.prodDate, s.isUsed, " +
+                                "s.speed, s.crewSize, s.rating, s.version from ship s order by s.id", Object[].class)
+                                .getResultList()});
+                loadedWatermark = (Long) loaded[0];
+                rows = castRows(loaded[1]);
+            } finally {
+                lock.writeLock().lock();
+                try {
+                    if (rows != null) {
+                        load(rows);
+                        watermark = loadedWatermark;
+                    }
+                } finally {
+                    pending = null;
+                    lock.writeLock().unlock();
+                }
+            }
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object[]> castRows(Object rows) {
+        return (List<Object[]>) rows;
+    }
+
+    private void load(List<Object[]> rows) {
+        allocate(Math.max(INITIAL_CAPACITY, rows.size()));
+        for (Object[] row : rows) {
+            write(size++, new Ship((Long) row[0], (String) row[1], (String) row[2], (ShipType) row[3],
+                    (Date) row[4], (Boolean) row[5], (Double) row[6], (Integer) row[7], (Double) row[8],
+                    (Long) row[9]));
+        }
+        for (ShipOrder order : ORDERS)
+            sort(order);
+        pending.forEach(Runnable::run);
+    }
+
+    /**
+     * Переносит в снимок изменения из последовательности изменений после уже перенесенных:
+     * читаются только измененные корабли и надгробия, а не вся таблица
+     */
+    public void catchUp() {
+        rebuildLock.lock();
+        try {
+            ShipChanges changes;
+            do {
+                long since = watermark;
+                changes = transactionTemplate.execute(status -> changeLog.changesSince(since, CATCH_UP_PAGE));
+                List<ShipChange> page = changes.getChanges();
+                long next = changes.getWatermark();
+                apply(() -> {
+                    for (ShipChange change : page) {
+                        if (change.getType() == ShipChange.Type.DELETE)
+                            removeRow(change.getId());
+                        else
+                            putRow(change.getShip());
+                    }
+                    watermark = Math.max(watermark, next);
+                });
+            } while (changes.getHasMore());
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    public void put(Ship ship) {
+        apply(() -> putRow(ship));
+    }
+
+    public void remove(Long id) {
+        apply(() -> removeRow(id));
+    }
+
+    private void apply(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            change.run();
+            if (pending != null)
+                pending.add(change);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void putRow(Ship ship) {
+        Integer row = rowById.get(ship.getId());
+        if (row == null) {
+            ensureCapacity(size + 1);
+            write(size, ship);
+            link(size, size);
+            size++;
+            return;
+        }
+        // Запись, начатая до более нового изменения того же корабля, не должна вернуть прежнее состояние
+        if (Objects.nonNull(ship.getVersion()) && versions[row] > ship.getVersion())
+            return;
+        unlink(row, size);
+        write(row, ship);
+        link(row, size - 1);
+    }
+
+    private void removeRow(Long id) {
+        Integer row = rowById.remove(id);
+        if (row == null)
+            return;
+        unlink(row, size);
+        // На место удаленной строки переносится последняя, чтобы массивы оставались плотными
+        int last = --size;
+        if (row != last) {
+            for (ShipOrder order : ORDERS)
+                sorted[order.ordinal()][positionOf(order, last, size)] = row;
+            move(last, row);
+        }
+        names[last] = null;
+        normalizedNames[last] = null;
+    }
+
+    /**
+     * Убирает строку из всех перестановок, в которых заняты первые length элементов
+     */
+    private void unlink(int row, int length) {
+        for (ShipOrder order : ORDERS) {
+            int[] permutation = sorted[order.ordinal()];
+            int position = positionOf(order, row, length);
+            System.arraycopy(permutation, position + 1, permutation, position, length - position - 1);
+        }
+    }
+
+    /**
+     * Вставляет строку во все перестановки, в которых заняты первые length элементов, на место по ее значениям
+     */
+    private void link(int row, int length) {
+        for (ShipOrder order : ORDERS) {
+            int[] permutation = sorted[order.ordinal()];
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compareRows(order, permutation[mid], row) < 0)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            System.arraycopy(permutation, low, permutation, low + 1, length - low);
+            permutation[low] = row;
+        }
+    }
+
+    /**
+     * Позиция строки в перестановке order; строка однозначна, потому что порядок включает id
+     */
+    private int positionOf(ShipOrder order, int row, int length) {
+        int[] permutation = sorted[order.ordinal()];
+        int low = 0;
+        int high = length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int result = compareRows(order, permutation[mid], row);
+            if (result < 0)
+                low = mid + 1;
+            else if (result > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        throw new IllegalStateException("Row " + row + " is missing from the " + order + " order");
+    }
+
+    /**
+     * Возвращает страницу кораблей по номеру страницы и общее количество подходящих под фильтр кораблей
+     */
+    public ShipPage page(ShipDTO shipDTO, int pageNumber, int pageSize) {
+        ShipOrder order = Objects.isNull(shipDTO.getOrderBy()) ? ShipOrder.ID : shipDTO.getOrderBy();
+        long skip = (long) pageNumber * pageSize;
+
+        lock.readLock().lock();
+        try {
+            int[] permutation = sorted[order.ordinal()];
+            Matcher matcher = new Matcher(shipDTO);
+            List<Ship> items = new ArrayList<>(pageSize);
+            int total = 0;
+            for (int i = 0; i < size; i++) {
+                int row = permutation[i];
+                if (!matcher.matches(row))
+                    continue;
+                if (total >= skip && items.size() < pageSize)
+                    items.add(read(row));
+                total++;
+            }
+            return new ShipPage(items, total);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает страницу кораблей после курсора (или с начала, если курсор не задан)
+     */
+    public List<Ship> pageAfter(ShipDTO shipDTO, ShipCursor cursor, int pageSize) {
+        ShipOrder order = Objects.isNull(shipDTO.getOrderBy()) ? ShipOrder.ID : shipDTO.getOrderBy();
+
+        lock.readLock().lock();
+        try {
+            int[] permutation = sorted[order.ordinal()];
+            Matcher matcher = new Matcher(shipDTO);
+            List<Ship> items = new ArrayList<>(pageSize);
+            int start = Objects.isNull(cursor) ? 0 : firstAfter(permutation, order, cursor);
+            for (int i = start; i < size && items.size() < pageSize; i++) {
+                if (matcher.matches(permutation[i]))
+                    items.add(read(permutation[i]));
+            }
+            return items;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int count(ShipDTO shipDTO) {
+        lock.readLock().lock();
+        try {
+            Matcher matcher = new Matcher(shipDTO);
+            int total = 0;
+            for (int row = 0; row < size; row++) {
+                if (matcher.matches(row))
+                    total++;
+            }
+            return total;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Проверка фильтра для строки. Условия, не зависящие от строки, вычисляются один раз в конструкторе.
+     */
+    private class Matcher {
+
+        private final String name;
+        private final boolean[] planetMatches;
+        private final byte shipType;
+        private final long after;
+        private final long before;
+        private final byte isUsed;
+        private final double minSpeed;
+        private final double maxSpeed;
+        private final int minCrewSize;
+        private final int maxCrewSize;
+        private final double minRating;
+        private final double maxRating;
+
+        Matcher(ShipDTO shipDTO) {
+            name = isValidString(shipDTO.getName()) ? ShipTrigramIndex.normalize(shipDTO.getName()) : null;
+
+            // Подстроку планеты проверяем один раз на каждое значение словаря, а не на каждую строку
+            String planet = shipDTO.getPlanet();
+            if (isValidString(planet)) {
+                String normalized = ShipTrigramIndex.normalize(planet);
+                planetMatches = new boolean[normalizedPlanets.size()];
+                for (int code = 0; code < planetMatches.length; code++)
+                    planetMatches[code] = normalizedPlanets.get(code).contains(normalized);
+            } else {
+                planetMatches = null;
+            }
+
+            shipType = Objects.isNull(shipDTO.getShipType()) ? NULL_BYTE : (byte) shipDTO.getShipType().ordinal();
+            after = Objects.isNull(shipDTO.getAfter()) ? Long.MIN_VALUE : shipDTO.getAfter();
+            before = Objects.isNull(shipDTO.getBefore()) ? Long.MAX_VALUE : shipDTO.getBefore();
+            isUsed = Objects.isNull(shipDTO.getUsed()) ? NULL_BYTE : toByte(shipDTO.getUsed());
+            minSpeed = Objects.isNull(shipDTO.getMinSpeed()) ? Double.NEGATIVE_INFINITY : shipDTO.getMinSpeed();
+            maxSpeed = Objects.isNull(shipDTO.getMaxSpeed()) ? Double.POSITIVE_INFINITY : shipDTO.getMaxSpeed();
+            minCrewSize = Objects.isNull(shipDTO.getMinCrewSize()) ? Integer.MIN_VALUE : shipDTO.getMinCrewSize();
+            maxCrewSize = Objects.isNull(shipDTO.getMaxCrewSize()) ? Integer.MAX_VALUE : shipDTO.getMaxCrewSize();
+            minRating = Objects.isNull(shipDTO.getMinRating()) ? Double.NEGATIVE_INFINITY : shipDTO.getMinRating();
+            maxRating = Objects.isNull(shipDTO.getMaxRating()) ? Double.POSITIVE_INFINITY : shipDTO.getMaxRating();
+        }
+
+        boolean matches(int row) {
+            // Как и в SQL, пустое (null) значение поля не проходит ни одно условие на это поле
+            if (shipType != NULL_BYTE && shipTypes[row] != shipType)
+                return false;
+            if (isUsed != NULL_BYTE && used[row] != isUsed)
+                return false;
+            long prodDate = prodDates[row];
+            if ((after != Long.MIN_VALUE || before != Long.MAX_VALUE)
+                    && (prodDate == NULL_LONG || prodDate < after || prodDate > before))
+                return false;
+            // Сравнения с NaN (null) всегда ложны
+            double speed = speeds[row];
+            if (!(speed >= minSpeed && speed <= maxSpeed))
+                return false;
+            int crewSize = crewSizes[row];
+            if ((minCrewSize != Integer.MIN_VALUE || maxCrewSize != Integer.MAX_VALUE)
+                    && (crewSize == NULL_INT || crewSize < minCrewSize || crewSize > maxCrewSize))
+                return false;
+            double rating = ratings[row];
+            if (!(rating >= minRating && rating <= maxRating))
+                return false;
+            if (planetMatches != null && (planets[row] == NULL_INT || !planetMatches[planets[row]]))
+                return false;
+            return name == null || (normalizedNames[row] != null && normalizedNames[row].contains(name));
+        }
+    }
+
+    /**
+     * Сортирует строки по order сортировкой слиянием по массиву int: без упаковки номеров строк в Integer.
+     * Таблица читается в порядке id, поэтому уже упорядоченные участки не сливаются
+     */
+    private void sort(ShipOrder order) {
+        int[] permutation = sorted[order.ordinal()];
+        for (int row = 0; row < size; row++)
+            permutation[row] = row;
+        mergeSort(order, permutation, new int[size], 0, size);
+    }
+
+    private void mergeSort(ShipOrder order, int[] rows, int[] buffer, int from, int to) {
+        if (to - from < 2)
+            return;
+        int mid = (from + to) >>> 1;
+        mergeSort(order, rows, buffer, from, mid);
+        mergeSort(order, rows, buffer, mid, to);
+        if (compareRows(order, rows[mid - 1], rows[mid]) <= 0)
+            return;
+        System.arraycopy(rows, from, buffer, from, to - from);
+        int left = from;
+        int right = mid;
+        for (int i = from; i < to; i++) {
+            if (right >= to || left < mid && compareRows(order, buffer[left], buffer[right]) <= 0)
+                rows[i] = buffer[left++];
+            else
+                rows[i] = buffer[right++];
+        }
+    }
+
+    private int compareRows(ShipOrder order, int a, int b) {
+        int result;
+        switch (order) {
+            case SPEED:
+                result = Double.compare(speeds[a], speeds[b]);
+                break;
+            case DATE:
+                result = Long.compare(prodDates[a], prodDates[b]);
+                break;
+            case RATING:
+                result = Double.compare(ratings[a], ratings[b]);
+                break;
+            default:
+                result = 0;
+        }
+        return result != 0 ? result : Long.compare(ids[a], ids[b]);
+    }
+
+    /**
+     * Двоичный поиск первой позиции перестановки, строка которой идет строго после курсора
+     */
+    private int firstAfter(int[] permutation, ShipOrder order, ShipCursor cursor) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareToCursor(order, permutation[mid], cursor) <= 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private int compareToCursor(ShipOrder order, int row, ShipCursor cursor) {
+        int result;
+        switch (order) {
+            case SPEED:
+                result = Double.compare(speeds[row], (Double) cursor.getSortKey());
+                break;
+            case DATE:
+                result = Long.compare(prodDates[row], ((Date) cursor.getSortKey()).getTime());
+                break;
+            case RATING:
+                result = Double.compare(ratings[row], (Double) cursor.getSortKey());
+                break;
+            default:
+                result = 0;
+        }
+        return result != 0 ? result : Long.compare(ids[row], cursor.getId());
+    }
+
+    private void write(int row, Ship ship) {
+        ids[row] = ship.getId();
+        names[row] = ship.getName();
+        normalizedNames[row] = Objects.isNull(ship.getName()) ? null : ShipTrigramIndex.normalize(ship.getName());
+        planets[row] = encodePlanet(ship.getPlanet());
+        shipTypes[row] = Objects.isNull(ship.getShipType()) ? NULL_BYTE : (byte) ship.getShipType().ordinal();
+        prodDates[row] = Objects.isNull(ship.getProdDate()) ? NULL_LONG : ship.getProdDate().getTime();
+        used[row] = Objects.isNull(ship.getUsed()) ? NULL_BYTE : toByte(ship.getUsed());
+        speeds[row] = Objects.isNull(ship.getSpeed()) ? Double.NaN : ship.getSpeed();
+        crewSizes[row] = Objects.isNull(ship.getCrewSize()) ? NULL_INT : ship.getCrewSize();
+        ratings[row] = Objects.isNull(ship.getRating()) ? Double.NaN : ship.getRating();
+        versions[row] = Objects.isNull(ship.getVersion()) ? 0 : ship.getVersion();
+        rowById.put(ship.getId(), row);
+    }
+
+    private void move(int from, int to) {
+        ids[to] = ids[from];
+        names[to] = names[from];
+        normalizedNames[to] = normalizedNames[from];
+        planets[to] = planets[from];
+        shipTypes[to] = shipTypes[from];
+        prodDates[to] = prodDates[from];
+        used[to] = used[from];
+        speeds[to] = speeds[from];
+        crewSizes[to] = crewSizes[from];
+        ratings[to] = ratings[from];
+        versions[to] = versions[from];
+        rowById.put(ids[to], to);
+    }
+
+    private Ship read(int row) {
+        return new Ship(ids[row], names[row],
+                planets[row] == NULL_INT ? null : planetDictionary.get(planets[row]),
+                shipTypes[row] == NULL_BYTE ? null : SHIP_TYPES[shipTypes[row]],
+                prodDates[row] == NULL_LONG ? null : new Date(prodDates[row]),
+                used[row] == NULL_BYTE ? null : used[row] == 1,
+                Double.isNaN(speeds[row]) ? null : speeds[row],
+                crewSizes[row] == NULL_INT ? null : crewSizes[row],
+                Double.isNaN(ratings[row]) ? null : ratings[row],
+                versions[row]);
+    }
+
+    private int encodePlanet(String planet) {
+        if (planet == null)
+            return NULL_INT;
+        Integer code = planetCodes.get(planet);
+        if (code == null) {
+            code = planetDictionary.size();
+            planetDictionary.add(planet);
+            normalizedPlanets.add(ShipTrigramIndex.normalize(planet));
+            planetCodes.put(planet, code);
+        }
+        return code;
+    }
+
+    private void allocate(int capacity) {
+        size = 0;
+        ids = new long[capacity];
+        names = new String[capacity];
+        normalizedNames = new String[capacity];
+        planets = new int[capacity];
+        shipTypes = new byte[capacity];
+        prodDates = new long[capacity];
+        used = new byte[capacity];
+        speeds = new double[capacity];
+        crewSizes = new int[capacity];
+        ratings = new double[capacity];
+        versions = new long[capacity];
+        rowById = new HashMap<>(capacity * 2);
+        planetDictionary = new ArrayList<>();
+        normalizedPlanets = new ArrayList<>();
+        planetCodes = new HashMap<>();
+        for (ShipOrder order : ORDERS)
+            sorted[order.ordinal()] = new int[capacity];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length)
+            return;
+        int newCapacity = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, newCapacity);
+        names = Arrays.copyOf(names, newCapacity);
+        normalizedNames = Arrays.copyOf(normalizedNames, newCapacity);
+        planets = Arrays.copyOf(planets, newCapacity);
+        shipTypes = Arrays.copyOf(shipTypes, newCapacity);
+        prodDates = Arrays.copyOf(prodDates, newCapacity);
+        used = Arrays.copyOf(used, newCapacity);
+        speeds = Arrays.copyOf(speeds, newCapacity);
+        crewSizes = Arrays.copyOf(crewSizes, newCapacity);
+        ratings = Arrays.copyOf(ratings, newCapacity);
+        versions = Arrays.copyOf(versions, newCapacity);
+        for (ShipOrder order : ORDERS)
+            sorted[order.ordinal()] = Arrays.copyOf(sorted[order.ordinal()], newCapacity);
+    }
+
+    private static byte toByte(Boolean value) {
+        return (byte) (value ? 1 : 0);
+    }
+
+    private static boolean isValidString(String s) {
+        return Objects.nonNull(s) && !s.isEmpty();
+    }
+}
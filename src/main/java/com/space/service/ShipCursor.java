@@ -0,0 +1,120 @@
+package com.space.service;
+
+import com.space.controller.ShipOrder;
+import com.space.model.Ship;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * Позиция в выдаче для постраничного вывода по ключу (keyset pagination).
+ * Хранит значение поля сортировки и id последнего корабля на странице,
+ * id используется для однозначного упорядочивания при равных значениях поля.
+ */
+public class ShipCursor {
+
+    private static final String SEPARATOR = ":";
+
+    private final ShipOrder order;
+    private final Comparable<?> sortKey;
+    private final Long id;
+
+    private ShipCursor(ShipOrder order, Comparable<?> sortKey, Long id) {
+        this.order = order;
+        this.sortKey = sortKey;
+        this.id = id;
+    }
+
+    /**
+     * Создает курсор, указывающий на позицию сразу после переданного корабля
+     *
+     * @param ship  Последний корабль страницы
+     * @param order Порядок сортировки выдачи
+     * @return Курсор на следующую страницу
+     */
+    public static ShipCursor after(Ship ship, ShipOrder order) {
+        Comparable<?> sortKey;
+        switch (order) {
+            case SPEED:
+                sortKey = ship.getSpeed();
+                break;
+            case DATE:
+                sortKey = new Date(ship.getProdDate().getTime());
+                break;
+            case RATING:
+                sortKey = ship.getRating();
+                break;
+            default:
+                sortKey = ship.getId();
+        }
+        return new ShipCursor(order, sortKey, ship.getId());
+    }
+
+    /**
+     * Восстанавливает курсор из непрозрачного токена
+     *
+     * @param token Токен, ранее полученный из {@link #encode()}
+     * @return Курсор или null, если токен поврежден
+     */
+    public static ShipCursor decode(String token) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = decoded.split(SEPARATOR);
+            if (parts.length != 3)
+                return null;
+
+            ShipOrder order = ShipOrder.valueOf(parts[0]);
+            Long id = Long.valueOf(parts[2]);
+            Comparable<?> sortKey;
+            switch (order) {
+                case SPEED:
+                case RATING:
+                    sortKey = Double.valueOf(parts[1]);
+                    break;
+                case DATE:
+                    sortKey = new Date(Long.parseLong(parts[1]));
+                    break;
+                default:
+                    sortKey = id;
+            }
+            return new ShipCursor(order, sortKey, id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public String encode() {
+        String value = sortKey instanceof Date ? String.valueOf(((Date) sortKey).getTime()) : String.valueOf(sortKey);
+        String raw = order.name() + SEPARATOR + value + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public ShipOrder getOrder() {
+        return order;
+    }
+
+    public Comparable<?> getSortKey() {
+        return sortKey;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ShipCursor that = (ShipCursor) o;
+        return order == that.order &&
+                Objects.equals(sortKey, that.sortKey) &&
+                Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(order, sortKey, id);
+    }
+}
@@ -1,10 +1,13 @@
 package com.space.service;
 
 import com.space.controller.ShipOrder;
+import com.space.model.Ship;
 import com.space.model.ShipType;
 
 public class ShipDTO {
 
+    public static final int DEFAULT_PAGE_SIZE = 3;
+
     public ShipDTO() {
     }
 
@@ -28,6 +31,58 @@ public class ShipDTO {
         this.orderBy = orderBy;
     }
 
+    /**
+     * Проверяет, задано ли хотя бы одно условие фильтра (страница и сортировка не учитываются)
+     */
+    public boolean hasConditions() {
+        return isNotEmpty(name) || isNotEmpty(planet) || shipType != null || after != null || before != null
+                || isUsed != null || minSpeed != null || maxSpeed != null || minCrewSize != null
+                || maxCrewSize != null || minRating != null || maxRating != null;
+    }
+
+    /**
+     * Проверяет корабль на условия фильтра в памяти, так же как их проверяет запрос к БД
+     * (страница и сортировка не учитываются)
+     */
+    public boolean matches(Ship ship) {
+        // Как и в SQL, пустое (null) значение поля не проходит ни одно условие на это поле
+        if (isNotEmpty(name) && !containsIgnoreCase(ship.getName(), name))
+            return false;
+        if (isNotEmpty(planet) && !containsIgnoreCase(ship.getPlanet(), planet))
+            return false;
+        if (shipType != null && shipType != ship.getShipType())
+            return false;
+        if ((after != null || before != null) && ship.getProdDate() == null)
+            return false;
+        if (after != null && ship.getProdDate().getTime() < after)
+            return false;
+        if (before != null && ship.getProdDate().getTime() > before)
+            return false;
+        if (isUsed != null && !isUsed.equals(ship.getUsed()))
+            return false;
+        return inRange(ship.getSpeed(), minSpeed, maxSpeed)
+                && inRange(ship.getCrewSize(), minCrewSize, maxCrewSize)
+                && inRange(ship.getRating(), minRating, maxRating);
+    }
+
+    private static <T extends Comparable<T>> boolean inRange(T value, T min, T max) {
+        if (min == null && max == null)
+            return true;
+        return value != null && (min == null || value.compareTo(min) >= 0)
+                && (max == null || value.compareTo(max) <= 0);
+    }
+
+    /**
+     * Подстрока без учета регистра и диакритики, как LIKE при регистронезависимой сортировке MySQL
+     */
+    private static boolean containsIgnoreCase(String value, String substring) {
+        return value != null && ShipTrigramIndex.normalize(value).contains(ShipTrigramIndex.normalize(substring));
+    }
+
+    private static boolean isNotEmpty(String s) {
+        return s != null && !s.isEmpty();
+    }
+
     public String getName() {
         return name;
     }
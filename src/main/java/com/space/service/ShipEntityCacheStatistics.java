@@ -0,0 +1,53 @@
+package com.space.service;
+
+import com.space.model.Ship;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+
+/**
+ * Статистика кэша второго уровня Hibernate для кораблей, доступная через JMX
+ */
+@Component
+@ManagedResource(objectName = "com.space:type=ShipEntityCache")
+public class ShipEntityCacheStatistics {
+
+    @PersistenceUnit
+    private EntityManagerFactory emf;
+
+    @ManagedAttribute
+    public long getHits() {
+        return regionStatistics().getHitCount();
+    }
+
+    @ManagedAttribute
+    public long getMisses() {
+        return regionStatistics().getMissCount();
+    }
+
+    @ManagedAttribute
+    public long getPuts() {
+        return regionStatistics().getPutCount();
+    }
+
+    @ManagedAttribute
+    public long getSize() {
+        return regionStatistics().getElementCountInMemory();
+    }
+
+    @ManagedOperation
+    public void evictAll() {
+        emf.getCache().evict(Ship.class);
+    }
+
+    private CacheRegionStatistics regionStatistics() {
+        return emf.unwrap(SessionFactory.class).getStatistics()
+                .getDomainDataRegionStatistics(Ship.class.getName());
+    }
+}
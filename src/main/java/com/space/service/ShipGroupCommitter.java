@@ -0,0 +1,216 @@
+package com.space.service;
+
+import com.space.model.Ship;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Групповая запись новых кораблей: корабли из одновременных запросов накапливаются в очереди
+ * не дольше maxDelay и сохраняются одной транзакцией (одним пакетом вставок и одним коммитом),
+ * после чего каждый запрос получает свой корабль с выданным id.
+ * Включается профилем group-commit, задержка и размер группы задаются свойствами
+ * ship.groupCommit.maxDelay (мс) и ship.groupCommit.batchSize, а время ожидания места в заполненной
+ * очереди - свойством ship.groupCommit.submitTimeout (мс).
+ * Каждое изменение флота держит строку счетчика изменений от получения номера до коммита
+ * (см. {@link ShipChangeLog}), поэтому изменения фиксируются строго по одному и их не больше,
+ * чем 1 / (время получения номера и коммита) в секунду: при 1-2 мс на коммит с fsync это 500-1000 в секунду
+ * на все изменения вместе. Группа занимает один номер и один коммит, так что для создания кораблей
+ * потолок умножается на средний размер группы (getAverageBatchSize).
+ */
+@Component
+@Profile("group-commit")
+@ManagedResource(objectName = "com.space:type=ShipGroupCommit")
+public class ShipGroupCommitter implements InitializingBean, DisposableBean {
+
+    private static final long DEFAULT_MAX_DELAY = 5;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    private static final long DEFAULT_SUBMIT_TIMEOUT = 1000;
+
+    // Во сколько групп помещается очередь; когда она заполнена, запросы ждут освобождения места
+    private static final int QUEUED_BATCHES = 10;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private ShipChangeLog changeLog;
+
+    @Autowired
+    private ShipInsertPermits insertPermits;
+
+    private long maxDelayNanos;
+    private int batchSize;
+    private long submitTimeoutMillis;
+    private BlockingQueue<Pending> queue;
+    private Thread writer;
+    private volatile boolean running;
+
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder ships = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+
+    @Override
+    public void afterPropertiesSet() {
+        maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(
+                environment.getProperty("ship.groupCommit.maxDelay", Long.class, DEFAULT_MAX_DELAY));
+        batchSize = environment.getProperty("ship.groupCommit.batchSize", Integer.class, DEFAULT_BATCH_SIZE);
+        submitTimeoutMillis = environment.getProperty("ship.groupCommit.submitTimeout", Long.class,
+                DEFAULT_SUBMIT_TIMEOUT);
+        queue = new LinkedBlockingQueue<>(batchSize * QUEUED_BATCHES);
+
+        running = true;
+        writer = new Thread(this::writeLoop, "ship-group-commit");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        writer.interrupt();
+        writer.join();
+    }
+
+    /**
+     * Ставит корабль, прошедший проверку, в очередь на запись
+     *
+     * @return Корабль с выданным id после коммита группы, в которую он попал. После остановки завершается
+     * с CancellationException, а если очередь не освободилась за submitTimeout - с RejectedExecutionException
+     */
+    public CompletableFuture<Ship> submit(Ship ship) {
+        Pending pending = new Pending(ship);
+        if (!running) {
+            pending.result.completeExceptionally(new CancellationException("Group commit is stopped"));
+            return pending.result;
+        }
+        try {
+            if (!queue.offer(pending, submitTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                pending.result.completeExceptionally(new RejectedExecutionException("Group commit queue is full"));
+                return pending.result;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.result.completeExceptionally(e);
+            return pending.result;
+        }
+        // Остановка могла начаться, пока корабль вставал в очередь: если писатель уже разобрал ее
+        // и не забрал корабль, отменяем его сами
+        if (!running && queue.remove(pending))
+            pending.result.completeExceptionally(new CancellationException("Group commit is stopped"));
+        return pending.result;
+    }
+
+    @ManagedAttribute
+    public long getCommits() {
+        return commits.sum();
+    }
+
+    @ManagedAttribute
+    public long getShips() {
+        return ships.sum();
+    }
+
+    @ManagedAttribute
+    public double getAverageBatchSize() {
+        long count = commits.sum();
+        return count == 0 ? 0 : (double) ships.sum() / count;
+    }
+
+    @ManagedAttribute
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @ManagedAttribute
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                // Группа открывается первым кораблем и закрывается по размеру или по истечении maxDelay
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < batchSize) {
+                    Pending next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null)
+                        break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+            write(batch);
+            batch.clear();
+        }
+
+        batch.addAll(queue);
+        CancellationException stopped = new CancellationException("Group commit is stopped");
+        batch.forEach(pending -> pending.result.completeExceptionally(stopped));
+    }
+
+    private void write(List<Pending> batch) {
+        try {
+            // Вся группа - одно изменение флота с общим номером, который берется после вставок
+            long marker = changeLog.marker();
+            long changeSeq = insertPermits.execute(transactionTemplate, status -> {
+                for (Pending pending : batch) {
+                    // После отката неудачной группы у корабля остается выданный id, его нужно сбросить
+                    pending.ship.prepareForCreate();
+                    pending.ship.setChangeSeq(marker);
+                    em.persist(pending.ship);
+                }
+                em.flush();
+                return changeLog.assign(marker);
+            });
+            batch.forEach(pending -> pending.ship.setChangeSeq(changeSeq));
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).result.completeExceptionally(e);
+                return;
+            }
+            // Ошибка одного корабля не должна отклонять остальные: записываем группу по одному
+            retries.increment();
+            for (Pending pending : batch)
+                write(Collections.singletonList(pending));
+            return;
+        }
+
+        commits.increment();
+        ships.add(batch.size());
+        batch.forEach(pending -> pending.result.complete(pending.ship));
+    }
+
+    private static class Pending {
+        private final Ship ship;
+        private final CompletableFuture<Ship> result = new CompletableFuture<>();
+
+        Pending(Ship ship) {
+            this.ship = ship;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.space.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Итог загрузки кораблей: количество сохраненных и отклоненных строк и первые ошибки
+ */
+public class ShipImportResult {
+
+    private static final int MAX_ERRORS = 100;
+
+    private long imported;
+    private long rejected;
+    private List<Error> errors = new ArrayList<>();
+
+    public void accept(long count) {
+        imported += count;
+    }
+
+    public void reject(long line, String message) {
+        rejected++;
+        if (errors.size() < MAX_ERRORS)
+            errors.add(new Error(line, message));
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public List<Error> getErrors() {
+        return errors;
+    }
+
+    public static class Error {
+        private long line;
+        private String message;
+
+        public Error(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.space.service;
+
+import com.space.model.Ship;
+
+/**
+ * Строка загружаемого файла: разобранный корабль или описание ошибки разбора
+ */
+public class ShipImportRow {
+
+    private final long line;
+    private final Ship ship;
+    private final String error;
+
+    private ShipImportRow(long line, Ship ship, String error) {
+        this.line = line;
+        this.ship = ship;
+        this.error = error;
+    }
+
+    public static ShipImportRow of(long line, Ship ship) {
+        return new ShipImportRow(line, ship, null);
+    }
+
+    public static ShipImportRow failed(long line, String error) {
+        return new ShipImportRow(line, null, error);
+    }
+
+    public long getLine() {
+        return line;
+    }
+
+    public Ship getShip() {
+        return ship;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
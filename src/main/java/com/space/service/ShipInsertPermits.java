@@ -0,0 +1,76 @@
+package com.space.service;
+
+import com.space.config.AppConfig;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разрешения на транзакции, вставляющие корабли.
+ * Генератор id кораблей (TableGenerator на ship_id_sequence) берет следующий блок id отдельной транзакцией
+ * на втором соединении пула, пока соединение вставляющей транзакции остается занятым. Если все соединения
+ * основной БД держат вставляющие транзакции (например, одновременные загрузки), каждой нужно еще одно
+ * и все ждут до таймаута пула. Поэтому вставляющих транзакций одновременно не больше, чем соединений
+ * в пуле без одного: последнее соединение рано или поздно освобождается для блока id.
+ * Пулу основной БД (db.pool.maxSize) нужно не меньше двух соединений; разрешение ждется не дольше
+ * таймаута получения соединения (db.pool.connectionTimeout).
+ */
+@Component
+@ManagedResource(objectName = "com.space:type=ShipInsertPermits")
+public class ShipInsertPermits implements InitializingBean {
+
+    @Autowired
+    private Environment environment;
+
+    private Semaphore permits;
+    private int maxInserts;
+    private long timeoutMillis;
+
+    @Override
+    public void afterPropertiesSet() {
+        int poolSize = environment.getProperty("db.pool.maxSize", Integer.class, AppConfig.POOL_MAX_SIZE);
+        maxInserts = Math.max(1, poolSize - 1);
+        timeoutMillis = environment.getProperty("db.pool.connectionTimeout", Long.class,
+                AppConfig.POOL_CONNECTION_TIMEOUT);
+        permits = new Semaphore(maxInserts, true);
+    }
+
+    /**
+     * Выполняет вставляющую транзакцию, получив разрешение
+     *
+     * @throws CannotCreateTransactionException Если разрешение не освободилось за таймаут пула
+     */
+    public <T> T execute(TransactionTemplate transactionTemplate, TransactionCallback<T> action) {
+        try {
+            if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS))
+                throw new CannotCreateTransactionException("No insert permit available within " + timeoutMillis + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CannotCreateTransactionException("Interrupted while waiting for an insert permit");
+        }
+        try {
+            return transactionTemplate.execute(action);
+        } finally {
+            permits.release();
+        }
+    }
+
+    @ManagedAttribute
+    public int getMaxInserts() {
+        return maxInserts;
+    }
+
+    @ManagedAttribute
+    public int getActiveInserts() {
+        return maxInserts - permits.availablePermits();
+    }
+}
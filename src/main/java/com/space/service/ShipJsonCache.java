@@ -0,0 +1,193 @@
+package com.space.service;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.space.model.Ship;
+import com.space.model.ShipJson;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Кэш готового JSON кораблей: выдача, страница и поток изменений копируют в ответ байты
+ * закэшированного JSON вместо повторной сериализации неизменившегося корабля.
+ * Запись хранится по id вместе с версией корабля и подходит только кораблю той же версии,
+ * поэтому измененный корабль никогда не получит прежний JSON. Изменение и удаление по id
+ * сразу освобождают запись, записи кораблей, измененных массово, вытесняются как давно не использовавшиеся.
+ * Объем ограничен свойством ship.jsonCache.maxBytes (0 отключает кэш).
+ * <p>
+ * Чтение не берет блокировок: запись только отмечает время обращения. LRU приблизительный: при переполнении
+ * один поток сортирует записи по времени обращения и вытесняет самые старые, пока объем не опустится
+ * до трех четвертей предела, так что сортировка случается не на каждой вставке.
+ */
+@Component
+@ManagedResource(objectName = "com.space:type=ShipJsonCache")
+public class ShipJsonCache implements ShipJson.Cache, InitializingBean {
+
+    private static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    // Оценка памяти записи: строка JSON и ее байты UTF-8 (до трех байт на символ с кириллицей)
+    // плюс ключ, узел карты и заголовки объектов
+    private static final int BYTES_PER_CHAR = 3;
+    private static final int ENTRY_OVERHEAD = 128;
+
+    @Autowired
+    private Environment environment;
+
+    private long maxBytes;
+
+    private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+    private final Lock evictionLock = new ReentrantLock();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @Override
+    public void afterPropertiesSet() {
+        maxBytes = environment.getProperty("ship.jsonCache.maxBytes", Long.class, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @return JSON корабля той же версии или null, если его нет в кэше
+     */
+    @Override
+    public SerializableString get(Ship ship) {
+        Entry entry = entries.get(ship.getId());
+        if (entry != null && entry.version == ship.getVersion()) {
+            entry.accessedAt = System.nanoTime();
+            hits.increment();
+            return entry.json;
+        }
+        misses.increment();
+        return null;
+    }
+
+    @Override
+    public void put(Ship ship, SerializableString json) {
+        long weight = (long) json.charLength() * BYTES_PER_CHAR + ENTRY_OVERHEAD;
+        if (weight > maxBytes)
+            return;
+
+        Entry entry = new Entry(ship.getId(), ship.getVersion(), json, weight);
+        while (true) {
+            Entry previous = entries.get(entry.id);
+            // Запрос, начатый до изменения, не должен заменять JSON более новой версии
+            if (previous != null && previous.version > entry.version)
+                return;
+            if (previous == null ? entries.putIfAbsent(entry.id, entry) == null
+                    : entries.replace(entry.id, previous, entry)) {
+                bytes.addAndGet(weight - (previous == null ? 0 : previous.weight));
+                break;
+            }
+        }
+        if (bytes.get() > maxBytes)
+            evictEldest();
+    }
+
+    public void evict(Long id) {
+        Entry entry = entries.remove(id);
+        if (entry != null)
+            bytes.addAndGet(-entry.weight);
+    }
+
+    @ManagedOperation
+    public void invalidate() {
+        for (Long id : entries.keySet())
+            evict(id);
+    }
+
+    private void evictEldest() {
+        // Вытесняет один поток, остальные не ждут его
+        if (!evictionLock.tryLock())
+            return;
+        try {
+            if (bytes.get() <= maxBytes)
+                return;
+            // Время обращения меняется во время сортировки, поэтому сортируются снятые значения
+            List<Map.Entry<Entry, Long>> byAccess = new ArrayList<>(entries.size());
+            for (Entry entry : entries.values())
+                byAccess.add(new AbstractMap.SimpleImmutableEntry<>(entry, entry.accessedAt));
+            byAccess.sort(Map.Entry.comparingByValue());
+
+            long target = maxBytes - maxBytes / 4;
+            for (Map.Entry<Entry, Long> eldest : byAccess) {
+                if (bytes.get() <= target)
+                    break;
+                Entry entry = eldest.getKey();
+                if (entries.remove(entry.id, entry)) {
+                    bytes.addAndGet(-entry.weight);
+                    evictions.increment();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @ManagedAttribute
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @ManagedAttribute
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @ManagedAttribute
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @ManagedAttribute
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @ManagedAttribute
+    public int getSize() {
+        return entries.size();
+    }
+
+    @ManagedAttribute
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    @ManagedAttribute
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private static class Entry {
+        private final Long id;
+        private final long version;
+        private final SerializableString json;
+        private final long weight;
+        private volatile long accessedAt = System.nanoTime();
+
+        Entry(Long id, long version, SerializableString json, long weight) {
+            this.id = id;
+            this.version = version;
+            this.json = json;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.space.service;
+
+import com.space.model.Ship;
+
+import java.util.List;
+
+/**
+ * Страница выдачи кораблей вместе с общим количеством кораблей, подходящих под фильтр
+ */
+public class ShipPage {
+
+    private List<Ship> items;
+    private Integer total;
+
+    public ShipPage() {
+    }
+
+    public ShipPage(List<Ship> items, Integer total) {
+        this.items = items;
+        this.total = total;
+    }
+
+    public List<Ship> getItems() {
+        return items;
+    }
+
+    public Integer getTotal() {
+        return total;
+    }
+}
@@ -0,0 +1,258 @@
+package com.space.service;
+
+import com.space.config.ReplicaRoutingDataSource;
+import com.space.controller.ShipOrder;
+import com.space.model.ShipType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Кэш результатов выдачи и подсчета кораблей по нормализованному фильтру.
+ * Размер ограничен суммарным весом записей (количеством закэшированных кораблей), предел задается
+ * свойством ship.queryCache.maxWeight; при переполнении вытесняются давно не использовавшиеся записи (LRU).
+ * Любое изменение кораблей сбрасывает кэш целиком, увеличивая номер поколения:
+ * результат запроса, начатого до изменения, в кэш уже не попадет.
+ * Если чтение идет с реплик, то и результаты, прочитанные в пределах их отставания после изменения,
+ * могут быть устаревшими, поэтому в это время кэш не пополняется.
+ */
+@Component
+@ManagedResource(objectName = "com.space:type=ShipQueryCache")
+public class ShipQueryCache {
+
+    private static final int DEFAULT_MAX_WEIGHT = 100_000;
+
+    @Autowired
+    private ReplicaRoutingDataSource routingDataSource;
+
+    private final int maxWeight;
+
+    private final AtomicLong generation = new AtomicLong();
+    private volatile long invalidatedAt;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // Блокировка, а не монитор: виртуальный поток, ожидающий ее, не занимает поток-носитель
+    private final Lock lock = new ReentrantLock();
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int weight;
+
+    @Autowired
+    public ShipQueryCache(Environment environment) {
+        maxWeight = environment.getProperty("ship.queryCache.maxWeight", Integer.class, DEFAULT_MAX_WEIGHT);
+    }
+
+    /**
+     * Возвращает закэшированную страницу или загружает ее
+     */
+    public <T> List<T> getShips(ShipDTO shipDTO, Supplier<List<T>> loader) {
+        return get(Key.forShips(shipDTO), () -> Collections.unmodifiableList(loader.get()));
+    }
+
+    /**
+     * Возвращает закэшированное количество или подсчитывает его
+     */
+    public Integer getCount(ShipDTO shipDTO, Supplier<Integer> loader) {
+        return get(Key.forCount(shipDTO), loader);
+    }
+
+    @ManagedOperation
+    public void invalidate() {
+        invalidatedAt = System.currentTimeMillis();
+        generation.incrementAndGet();
+        lock.lock();
+        try {
+            entries.clear();
+            weight = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @ManagedAttribute
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @ManagedAttribute
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @ManagedAttribute
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @ManagedAttribute
+    public int getSize() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @ManagedAttribute
+    public int getMaxWeight() {
+        return maxWeight;
+    }
+
+    @ManagedAttribute
+    public int getWeight() {
+        lock.lock();
+        try {
+            return weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T get(Key key, Supplier<T> loader) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits.increment();
+                return (T) entry.value;
+            }
+        } finally {
+            lock.unlock();
+        }
+        misses.increment();
+
+        long loadedGeneration = generation.get();
+        boolean stable = System.currentTimeMillis() - invalidatedAt >= routingDataSource.getMaxLagMillis();
+        T value = loader.get();
+        int valueWeight = value instanceof Collection ? ((Collection<?>) value).size() + 1 : 1;
+
+        lock.lock();
+        try {
+            // Пока шел запрос, корабли могли измениться, а реплика могла еще не получить последнее
+            // изменение: такой результат не кэшируем
+            if (!stable || loadedGeneration != generation.get() || valueWeight > maxWeight)
+                return value;
+
+            Entry previous = entries.put(key, new Entry(value, valueWeight));
+            weight += valueWeight - (previous == null ? 0 : previous.weight);
+
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (weight > maxWeight && eldest.hasNext()) {
+                weight -= eldest.next().weight;
+                eldest.remove();
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return value;
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final int weight;
+
+        Entry(Object value, int weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Нормализованный фильтр: пустые строки считаются отсутствующими, у выдачи подставляются
+     * значения страницы по умолчанию, у подсчета страница и сортировка не учитываются
+     */
+    private static class Key {
+        private final boolean count;
+        private final String name;
+        private final String planet;
+        private final ShipType shipType;
+        private final Long after;
+        private final Long before;
+        private final Boolean isUsed;
+        private final Double minSpeed;
+        private final Double maxSpeed;
+        private final Integer minCrewSize;
+        private final Integer maxCrewSize;
+        private final Double minRating;
+        private final Double maxRating;
+        private final Integer pageNumber;
+        private final Integer pageSize;
+        private final ShipOrder orderBy;
+
+        private Key(boolean count, ShipDTO shipDTO, Integer pageNumber, Integer pageSize, ShipOrder orderBy) {
+            this.count = count;
+            this.name = emptyToNull(shipDTO.getName());
+            this.planet = emptyToNull(shipDTO.getPlanet());
+            this.shipType = shipDTO.getShipType();
+            this.after = shipDTO.getAfter();
+            this.before = shipDTO.getBefore();
+            this.isUsed = shipDTO.getUsed();
+            this.minSpeed = shipDTO.getMinSpeed();
+            this.maxSpeed = shipDTO.getMaxSpeed();
+            this.minCrewSize = shipDTO.getMinCrewSize();
+            this.maxCrewSize = shipDTO.getMaxCrewSize();
+            this.minRating = shipDTO.getMinRating();
+            this.maxRating = shipDTO.getMaxRating();
+            this.pageNumber = pageNumber;
+            this.pageSize = pageSize;
+            this.orderBy = orderBy;
+        }
+
+        static Key forShips(ShipDTO shipDTO) {
+            Integer pageNumber = Objects.isNull(shipDTO.getPageNumber()) ? 0 : shipDTO.getPageNumber();
+            Integer pageSize = Objects.isNull(shipDTO.getPageSize()) ? ShipDTO.DEFAULT_PAGE_SIZE : shipDTO.getPageSize();
+            return new Key(false, shipDTO, pageNumber, pageSize, shipDTO.getOrderBy());
+        }
+
+        static Key forCount(ShipDTO shipDTO) {
+            return new Key(true, shipDTO, null, null, null);
+        }
+
+        private static String emptyToNull(String s) {
+            return Objects.isNull(s) || s.isEmpty() ? null : s;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return count == key.count &&
+                    Objects.equals(name, key.name) &&
+                    Objects.equals(planet, key.planet) &&
+                    shipType == key.shipType &&
+                    Objects.equals(after, key.after) &&
+                    Objects.equals(before, key.before) &&
+                    Objects.equals(isUsed, key.isUsed) &&
+                    Objects.equals(minSpeed, key.minSpeed) &&
+                    Objects.equals(maxSpeed, key.maxSpeed) &&
+                    Objects.equals(minCrewSize, key.minCrewSize) &&
+                    Objects.equals(maxCrewSize, key.maxCrewSize) &&
+                    Objects.equals(minRating, key.minRating) &&
+                    Objects.equals(maxRating, key.maxRating) &&
+                    Objects.equals(pageNumber, key.pageNumber) &&
+                    Objects.equals(pageSize, key.pageSize) &&
+                    orderBy == key.orderBy;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(count, name, planet, shipType, after, before, isUsed, minSpeed, maxSpeed,
+                    minCrewSize, maxCrewSize, minRating, maxRating, pageNumber, pageSize, orderBy);
+        }
+    }
+}
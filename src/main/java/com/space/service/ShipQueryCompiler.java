@@ -0,0 +1,304 @@
+package com.space.service;
+
+import com.space.controller.ShipOrder;
+import com.space.model.Ship;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Собирает параметризованные JPQL запросы по фильтру {@link ShipDTO}.
+ * Текст запроса зависит только от набора заданных полей фильтра (формы запроса), а не от их значений,
+ * поэтому он строится один раз на форму и кэшируется, а значения подставляются как параметры.
+ * Одинаковый текст запроса позволяет Hibernate и JDBC драйверу переиспользовать план и подготовленный запрос.
+ */
+@Component
+public class ShipQueryCompiler {
+
+    /**
+     * Выдача читается сразу в неуправляемые объекты через конструктор: Hibernate не регистрирует их
+     * в контексте постоянства и не хранит снимки для проверки изменений
+     */
+    private static final String SELECT = "select new com.space.model.Ship(s.id, s.name, s.planet, s.shipType, " +
+            "s.prodDate, s.isUsed, s.speed, s.crewSize, s.rating, s.version) from ship s";
+    private static final String COUNT = "select count(s) from ship s";
+    private static final String SELECT_IDS = "select s.id from ship s";
+    private static final String UPDATE = "update ship s set ";
+
+    private static final int SELECT_IDS_BIT = 1 << 12;
+    private static final int KEYSET_BIT = 1 << 16;
+    private static final int SEEK_BIT = 1 << 17;
+    private static final int COUNT_BIT = 1 << 18;
+    private static final int IDS_BIT = 1 << 19;
+    private static final int ORDER_SHIFT = 20;
+    private static final int ORDER_MASK = 0b111;
+    private static final int PATCH_SHIFT = 23;
+
+    /**
+     * Условия фильтра: фрагмент JPQL, имя параметра и способ получить значение параметра из фильтра
+     */
+    enum Filter {
+        NAME("s.name like :name", "name", dto -> isValidString(dto.getName()) ? "%" + dto.getName() + "%" : null),
+        PLANET("s.planet like :planet", "planet",
+                dto -> isValidString(dto.getPlanet()) ? "%" + dto.getPlanet() + "%" : null),
+        SHIP_TYPE("s.shipType = :shipType", "shipType", ShipDTO::getShipType),
+        AFTER("s.prodDate >= :after", "after",
+                dto -> Objects.isNull(dto.getAfter()) ? null : new java.sql.Date(dto.getAfter())),
+        BEFORE("s.prodDate <= :before", "before",
+                dto -> Objects.isNull(dto.getBefore()) ? null : new java.sql.Date(dto.getBefore())),
+        IS_USED("s.isUsed = :isUsed", "isUsed", ShipDTO::getUsed),
+        MIN_SPEED("s.speed >= :minSpeed", "minSpeed", ShipDTO::getMinSpeed),
+        MAX_SPEED("s.speed <= :maxSpeed", "maxSpeed", ShipDTO::getMaxSpeed),
+        MIN_CREW_SIZE("s.crewSize >= :minCrewSize", "minCrewSize", ShipDTO::getMinCrewSize),
+        MAX_CREW_SIZE("s.crewSize <= :maxCrewSize", "maxCrewSize", ShipDTO::getMaxCrewSize),
+        MIN_RATING("s.rating >= :minRating", "minRating", ShipDTO::getMinRating),
+        MAX_RATING("s.rating <= :maxRating", "maxRating", ShipDTO::getMaxRating);
+
+        private final String condition;
+        private final String parameter;
+        private final Function<ShipDTO, Object> value;
+
+        Filter(String condition, String parameter, Function<ShipDTO, Object> value) {
+            this.condition = condition;
+            this.parameter = parameter;
+            this.value = value;
+        }
+
+        Object valueOf(ShipDTO shipDTO) {
+            return value.apply(shipDTO);
+        }
+    }
+
+    private static final Filter[] FILTERS = Filter.values();
+
+    /**
+     * Изменяемые массовым обновлением поля: присваивание в JPQL, имя параметра и способ получить новое значение
+     */
+    enum Patch {
+        NAME("s.name = :newName", "newName", Ship::getName),
+        PLANET("s.planet = :newPlanet", "newPlanet", Ship::getPlanet),
+        SHIP_TYPE("s.shipType = :newShipType", "newShipType", Ship::getShipType),
+        PROD_DATE("s.prodDate = :newProdDate", "newProdDate", Ship::getProdDate),
+        IS_USED("s.isUsed = :newIsUsed", "newIsUsed", Ship::getUsed),
+        SPEED("s.speed = :newSpeed", "newSpeed", Ship::getSpeed),
+        CREW_SIZE("s.crewSize = :newCrewSize", "newCrewSize", Ship::getCrewSize);
+
+        private final String assignment;
+        private final String parameter;
+        private final Function<Ship, Object> value;
+
+        Patch(String assignment, String parameter, Function<Ship, Object> value) {
+            this.assignment = assignment;
+            this.parameter = parameter;
+            this.value = value;
+        }
+
+        Object valueOf(Ship ship) {
+            return value.apply(ship);
+        }
+    }
+
+    private static final Patch[] PATCHES = Patch.values();
+
+    /**
+     * Id, которого не бывает у кораблей: подставляется вместо пустого списка кандидатов,
+     * потому что пустой IN () допускают не все БД
+     */
+    private static final Long NO_ID = 0L;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Autowired
+    private ShipTrigramIndex trigramIndex;
+
+    private final Map<Integer, String> compiled = new ConcurrentHashMap<>();
+
+    /**
+     * Запрос кораблей с сортировкой из фильтра для постраничной выдачи по номеру страницы
+     */
+    public TypedQuery<Ship> select(ShipDTO shipDTO) {
+        Set<Long> ids = trigramIndex.candidates(shipDTO);
+        int shape = shapeOf(shipDTO, ids);
+        if (Objects.nonNull(shipDTO.getOrderBy()))
+            shape |= (shipDTO.getOrderBy().ordinal() + 1) << ORDER_SHIFT;
+
+        TypedQuery<Ship> query = em.createQuery(compiled.computeIfAbsent(shape, this::compile), Ship.class);
+        bind(query, shipDTO, ids);
+        return query;
+    }
+
+    /**
+     * Запрос кораблей для постраничной выдачи по ключу: сортировка по полю и id,
+     * выдача продолжается после курсора, если он передан
+     */
+    public TypedQuery<Ship> selectAfter(ShipDTO shipDTO, ShipCursor cursor) {
+        ShipOrder order = Objects.isNull(shipDTO.getOrderBy()) ? ShipOrder.ID : shipDTO.getOrderBy();
+        Set<Long> ids = trigramIndex.candidates(shipDTO);
+        int shape = shapeOf(shipDTO, ids) | KEYSET_BIT | (order.ordinal() + 1) << ORDER_SHIFT;
+        if (Objects.nonNull(cursor))
+            shape |= SEEK_BIT;
+
+        TypedQuery<Ship> query = em.createQuery(compiled.computeIfAbsent(shape, this::compile), Ship.class);
+        bind(query, shipDTO, ids);
+        if (Objects.nonNull(cursor)) {
+            query.setParameter("lastId", cursor.getId());
+            if (order != ShipOrder.ID)
+                query.setParameter("sortKey", cursor.getSortKey());
+        }
+        return query;
+    }
+
+    /**
+     * Запрос количества кораблей, подходящих под фильтр, без сортировки
+     */
+    public TypedQuery<Long> count(ShipDTO shipDTO) {
+        Set<Long> ids = trigramIndex.candidates(shipDTO);
+        String jpql = compiled.computeIfAbsent(shapeOf(shipDTO, ids) | COUNT_BIT, this::compile);
+        TypedQuery<Long> query = em.createQuery(jpql, Long.class);
+        bind(query, shipDTO, ids);
+        return query;
+    }
+
+    /**
+     * Запрос id кораблей, подходящих под фильтр, без сортировки
+     */
+    public TypedQuery<Long> selectIds(ShipDTO shipDTO) {
+        Set<Long> ids = trigramIndex.candidates(shipDTO);
+        String jpql = compiled.computeIfAbsent(shapeOf(shipDTO, ids) | SELECT_IDS_BIT, this::compile);
+        TypedQuery<Long> query = em.createQuery(jpql, Long.class);
+        bind(query, shipDTO, ids);
+        return query;
+    }
+
+    /**
+     * Запрос массового обновления кораблей, подходящих под фильтр: заданные поля patch присваиваются
+     * одним UPDATE, рейтинг пересчитывается в том же запросе по новым значениям полей
+     * (округление БД на границе может отличаться от Java, такие рейтинги исправляет вызывающий).
+     * Номер изменения передается параметром changeSeq
+     */
+    public Query update(ShipDTO shipDTO, Ship patch) {
+        Set<Long> ids = trigramIndex.candidates(shipDTO);
+        int shape = shapeOf(shipDTO, ids);
+        for (Patch field : PATCHES) {
+            if (Objects.nonNull(field.valueOf(patch)))
+                shape |= 1 << (PATCH_SHIFT + field.ordinal());
+        }
+
+        Query query = em.createQuery(compiled.computeIfAbsent(shape, this::compile));
+        bind(query, shipDTO, ids);
+        for (Patch field : PATCHES) {
+            Object value = field.valueOf(patch);
+            if (Objects.nonNull(value))
+                query.setParameter(field.parameter, value);
+        }
+        if (Objects.nonNull(patch.getUsed()))
+            query.setParameter("newUsedFactor", patch.getUsed() ? 0.5 : 1.0);
+        if (Objects.nonNull(patch.getProdDate())) {
+            Calendar prodDate = Calendar.getInstance();
+            prodDate.setTime(patch.getProdDate());
+            query.setParameter("newProdYear", prodDate.get(Calendar.YEAR));
+        }
+        return query;
+    }
+
+    private int shapeOf(ShipDTO shipDTO, Set<Long> ids) {
+        int shape = Objects.isNull(ids) ? 0 : IDS_BIT;
+        for (Filter filter : FILTERS) {
+            if (Objects.nonNull(filter.valueOf(shipDTO)))
+                shape |= 1 << filter.ordinal();
+        }
+        return shape;
+    }
+
+    private String compile(int shape) {
+        StringBuilder jpql = new StringBuilder();
+        if ((shape & COUNT_BIT) != 0)
+            jpql.append(COUNT);
+        else if ((shape & SELECT_IDS_BIT) != 0)
+            jpql.append(SELECT_IDS);
+        else if ((shape >>> PATCH_SHIFT) != 0)
+            appendUpdate(jpql, shape);
+        else
+            jpql.append(SELECT);
+
+        String separator = " where ";
+        for (Filter filter : FILTERS) {
+            if ((shape & (1 << filter.ordinal())) != 0) {
+                jpql.append(separator).append(filter.condition);
+                separator = " and ";
+            }
+        }
+        // Кандидаты из триграммного индекса сужают поиск, LIKE остается для точной проверки
+        if ((shape & IDS_BIT) != 0) {
+            jpql.append(separator).append("s.id in :ids");
+            separator = " and ";
+        }
+
+        int orderIndex = (shape >>> ORDER_SHIFT) & ORDER_MASK;
+        if (orderIndex == 0)
+            return jpql.toString();
+
+        String field = "s." + ShipOrder.values()[orderIndex - 1].getFieldName();
+        boolean byId = "s.id".equals(field);
+
+        if ((shape & KEYSET_BIT) != 0) {
+            if ((shape & SEEK_BIT) != 0) {
+                jpql.append(separator);
+                // (sortKey, id) > (:sortKey, :lastId)
+                if (byId)
+                    jpql.append("s.id > :lastId");
+                else
+                    jpql.append("(").append(field).append(" > :sortKey or (")
+                            .append(field).append(" = :sortKey and s.id > :lastId))");
+            }
+            // id добавляется к сортировке, чтобы порядок был однозначным при равных значениях поля
+            jpql.append(" order by ").append(field).append(byId ? "" : ", s.id");
+        } else {
+            jpql.append(" order by ").append(field);
+        }
+        return jpql.toString();
+    }
+
+    /**
+     * Присваивания массового обновления и пересчет рейтинга по той же формуле, что и
+     * в {@link Ship#update(Ship)}. Измененные поля берутся из параметров, а не из столбцов,
+     * потому что MySQL подставляет в следующие присваивания уже новые значения, а другие БД — старые
+     */
+    private void appendUpdate(StringBuilder jpql, int shape) {
+        jpql.append(UPDATE).append("s.version = s.version + 1, s.changeSeq = :changeSeq, ");
+        for (Patch field : PATCHES) {
+            if ((shape & (1 << (PATCH_SHIFT + field.ordinal()))) != 0)
+                jpql.append(field.assignment).append(", ");
+        }
+
+        String speed = (shape & (1 << (PATCH_SHIFT + Patch.SPEED.ordinal()))) != 0 ? ":newSpeed" : "s.speed";
+        String usedFactor = (shape & (1 << (PATCH_SHIFT + Patch.IS_USED.ordinal()))) != 0
+                ? ":newUsedFactor" : "(case when s.isUsed = true then 0.5 else 1.0 end)";
+        String prodYear = (shape & (1 << (PATCH_SHIFT + Patch.PROD_DATE.ordinal()))) != 0
+                ? ":newProdYear" : "year(s.prodDate)";
+        jpql.append("s.rating = round(80.0 * ").append(speed).append(" * ").append(usedFactor)
+                .append(" / (").append(Ship.RATING_YEAR).append(" - ").append(prodYear).append(" + 1), 2)");
+    }
+
+    private void bind(Query query, ShipDTO shipDTO, Set<Long> ids) {
+        for (Filter filter : FILTERS) {
+            Object value = filter.valueOf(shipDTO);
+            if (Objects.nonNull(value))
+                query.setParameter(filter.parameter, value);
+        }
+        if (Objects.nonNull(ids))
+            query.setParameter("ids", ids.isEmpty() ? Collections.singleton(NO_ID) : ids);
+    }
+
+    private static boolean isValidString(String s) {
+        return Objects.nonNull(s) && !s.isEmpty();
+    }
+}
@@ -2,19 +2,50 @@ package com.space.service;
 
 import com.space.model.Ship;
 
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 
 public interface ShipService {
     Iterable<Ship> getShips(ShipDTO shipDTO);
 
+    List<Ship> getShipsAfter(ShipDTO shipDTO, ShipCursor cursor);
+
+    ShipPage getPage(ShipDTO shipDTO);
+
+    void exportShips(ShipDTO shipDTO, Consumer<Ship> consumer);
+
     Optional<Ship> findById(Long id);
 
     Integer getCount(ShipDTO shipDTO);
 
     Ship save(Ship ship);
 
-    void deleteById(Long id);
+    ShipImportResult importShips(Iterator<ShipImportRow> rows, int batchSize);
+
+    boolean deleteById(Long id);
+
+    /**
+     * Изменяет корабль одним UPDATE с проверкой версии в условии; прежнее состояние читается без блокировки
+     *
+     * @param expectedVersions Версии, одну из которых должен иметь корабль, или null, если версия не проверяется
+     * @return Измененный корабль или пустой Optional, если корабля нет
+     * @throws javax.persistence.OptimisticLockException Если версия корабля не совпала ни с одной из ожидаемых
+     */
+    Optional<Ship> update(Long id, Ship patch, Collection<Long> expectedVersions);
+
+    int updateShips(ShipDTO shipDTO, Ship patch);
+
+    int deleteShips(ShipDTO shipDTO);
 
-    Ship update(Ship ship);
+    /**
+     * Изменения флота после водяного знака, включая удаления
+     *
+     * @param since Номер последнего полученного изменения, -1 для выдачи всего флота
+     * @param limit Наибольшее количество изменений на странице
+     */
+    ShipChanges getChanges(long since, int limit);
 }
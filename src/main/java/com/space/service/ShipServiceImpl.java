@@ -1,32 +1,138 @@
 package com.space.service;
 
-import com.space.controller.ShipOrder;
+import com.space.config.AppConfig;
+import com.space.config.ReplicaRoutingDataSource;
 import com.space.model.Ship;
 import com.space.model.ShipType;
 import com.space.repository.ShipRepository;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.hibernate.cache.spi.access.EntityDataAccess;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.jpa.QueryHints;
+import org.hibernate.persister.entity.EntityPersister;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.OptimisticLockException;
 import javax.persistence.PersistenceContext;
-import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Predicate;
-import javax.persistence.criteria.Root;
+import javax.persistence.PersistenceException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 public class ShipServiceImpl implements ShipService {
 
+    private static final int EXPORT_FETCH_SIZE = 1000;
+
+    // Изменения одного корабля выполняются запросами через JDBC, удаление - без предварительного чтения.
+    // Запрос JPQL сбросил бы из кэша второго уровня все корабли, а так блокируется только измененный
+    private static final String DELETE_BY_ID = "delete from ship where id = ?";
+
+    // Изменение одного корабля - один UPDATE с проверкой версии в условии: незаданные поля остаются прежними,
+    // рейтинг пересчитывается по формуле Ship.calculateRating из новых значений полей
+    private static final String SELECT_BY_ID = "select name, planet, shipType, prodDate, isUsed, speed, " +
+            "crewSize, rating, version from ship where id = ?";
+    private static final String UPDATE_BY_ID = "update ship set changeSeq = ?, name = coalesce(?, name), " +
+            "planet = coalesce(?, planet), shipType = coalesce(?, shipType), prodDate = coalesce(?, prodDate), " +
+            "isUsed = coalesce(?, isUsed), speed = coalesce(?, speed), crewSize = coalesce(?, crewSize), " +
+            "rating = round(80.0 * coalesce(?, speed) * (case when coalesce(?, isUsed) then 0.5 else 1.0 end) " +
+            "/ (" + Ship.RATING_YEAR + " - year(coalesce(?, prodDate)) + 1), 2), version = version + 1 " +
+            "where id = ?";
+
+    private static final String UPDATE_RATING = "update ship set rating = ? where id = ?";
+
+    // Массовое удаление выбранных кораблей; список id делится на части, чтобы не строить огромный IN
+    private static final String DELETE_BY_IDS = "delete from ship s where s.id in :ids";
+    private static final int DELETE_CHUNK_SIZE = 1000;
+
     @PersistenceContext
     private EntityManager em;
 
     @Autowired
     private ShipRepository shipRepository;
 
+    @Autowired
+    private ShipQueryCompiler queryCompiler;
+
+    @Autowired
+    private ShipTrigramIndex trigramIndex;
+
+    @Autowired
+    private ShipQueryCache queryCache;
+
+    @Autowired
+    private ShipJsonCache jsonCache;
+
+    @Autowired
+    private ExecutorService queryExecutor;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // Есть только в профиле group-commit
+    @Autowired(required = false)
+    private ShipGroupCommitter groupCommitter;
+
+    @Autowired
+    private TransactionTemplate readOnlyTransaction;
+
+    @Autowired
+    private ShipChangePublisher changePublisher;
+
+    @Autowired
+    private ShipChangeLog changeLog;
+
+    @Autowired
+    private ShipInsertPermits insertPermits;
+
     @Override
+    @Transactional(readOnly = true)
     public Iterable<Ship> getShips(ShipDTO shipDTO) {
-        return preparePagination(shipDTO);
+        return queryCache.getShips(shipDTO, () -> preparePagination(shipDTO));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public ShipPage getPage(ShipDTO shipDTO) {
+        // Количество считается в отдельном потоке на своем соединении, пока текущий поток читает страницу
+        CompletableFuture<Integer> total = CompletableFuture.supplyAsync(ReplicaRoutingDataSource.propagate(
+                () -> readOnlyTransaction.execute(status -> getCount(shipDTO))), queryExecutor);
+        List<Ship> items = queryCache.getShips(shipDTO, () -> preparePagination(shipDTO));
+        return new ShipPage(items, total.join());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Ship> getShipsAfter(ShipDTO shipDTO, ShipCursor cursor) {
+        return queryCompiler.selectAfter(shipDTO, cursor)
+                .setMaxResults(getPageSize(shipDTO))
+                .getResultList();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void exportShips(ShipDTO shipDTO, Consumer<Ship> consumer) {
+        // Строки читаются курсором порциями по EXPORT_FETCH_SIZE и не накапливаются в памяти
+        try (Stream<Ship> ships = queryCompiler.select(shipDTO)
+                .setHint(QueryHints.HINT_FETCH_SIZE, EXPORT_FETCH_SIZE)
+                .getResultStream()) {
+            ships.forEach(consumer);
+        }
     }
 
     @Override
@@ -35,111 +141,387 @@ public class ShipServiceImpl implements ShipService {
     }
 
     @Override
+    @Transactional(readOnly = true)
     public Integer getCount(ShipDTO shipDTO) {
-        CriteriaQuery<Ship> cq = prepareQuery(shipDTO);
-        return em.createQuery(cq).getResultList().size();
+        // Считаем корабли на стороне БД, не загружая сами сущности
+        return queryCache.getCount(shipDTO, () -> queryCompiler.count(shipDTO).getSingleResult().intValue());
     }
 
     public Ship save(Ship ship) {
         if (!ship.validate())
             return null;
-        Ship result = shipRepository.save(ship);
+        Ship result = Objects.isNull(groupCommitter) ? saveAlone(ship) : saveInGroup(ship);
+        trigramIndex.put(result);
+        queryCache.invalidate();
+        changePublisher.publish(ShipChange.created(result));
         return result;
     }
 
-    public void deleteById(Long id) {
-        shipRepository.deleteById(id);
+    private Ship saveAlone(Ship ship) {
+        long marker = changeLog.marker();
+        long changeSeq = insertPermits.execute(transactionTemplate, status -> {
+            // Как и в групповой записи, корабль всегда создается: присланный id не учитывается
+            ship.prepareForCreate();
+            ship.setChangeSeq(marker);
+            em.persist(ship);
+            em.flush();
+            return changeLog.assign(marker);
+        });
+        // Номер переносится в уже отсоединенный корабль, чтобы не вызвать повторного UPDATE при коммите
+        ship.setChangeSeq(changeSeq);
+        return ship;
     }
 
-    public Ship update(Ship ship) {
-        Ship result = shipRepository.saveAndFlush(ship);
-        return result;
+    private Ship saveInGroup(Ship ship) {
+        try {
+            return groupCommitter.submit(ship).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        }
     }
 
-    private CriteriaQuery<Ship> prepareQuery(ShipDTO shipDTO) {
-        // Получаем сборщик критериев для поиска требуемых кораблей
-        CriteriaBuilder cb = em.getCriteriaBuilder();
-        CriteriaQuery<Ship> cq = cb.createQuery(Ship.class);
-        Predicate p = cb.conjunction();
-        Root<Ship> root = cq.from(Ship.class);
-
-        String name = shipDTO.getName();
-        if (isValidString(name))
-            p = cb.and(p, cb.like(root.get("name"), "%" + name + "%"));
-
-        String planet = shipDTO.getPlanet();
-        if (isValidString(planet))
-            p = cb.and(p, cb.like(root.get("planet"), "%" + planet + "%"));
-
-        ShipType shipType = shipDTO.getShipType();
-        if (Objects.nonNull(shipType))
-            p = cb.and(p, cb.equal(root.get("shipType"), shipType));
-
-        Long after = shipDTO.getAfter();
-        if (Objects.nonNull(after))
-            p = cb.and(p, cb.greaterThanOrEqualTo(root.get("prodDate"), new java.sql.Date(after)));
+    @Override
+    public ShipImportResult importShips(Iterator<ShipImportRow> rows, int batchSize) {
+        ShipImportResult result = new ShipImportResult();
+        Long lastSeq = null;
+        while (rows.hasNext()) {
+            List<ShipImportRow> chunk = readChunk(rows, batchSize, result);
+            Long seq = importChunk(chunk, result);
+            if (Objects.nonNull(seq))
+                lastSeq = seq;
+            queryCache.invalidate();
+        }
+        // Загруженные корабли не рассылаются по одному: подписчики перечитывают выдачу
+        if (result.getImported() > 0)
+            changePublisher.publish(ShipChange.reload(lastSeq));
+        return result;
+    }
 
-        Long before = shipDTO.getBefore();
-        if (Objects.nonNull(before))
-            p = cb.and(p, cb.lessThanOrEqualTo(root.get("prodDate"), new java.sql.Date(before)));
+    /**
+     * Читает следующие batchSize прошедших проверку строк; строки с ошибками сразу попадают в итог
+     */
+    private List<ShipImportRow> readChunk(Iterator<ShipImportRow> rows, int batchSize, ShipImportResult result) {
+        List<ShipImportRow> chunk = new ArrayList<>(batchSize);
+        while (rows.hasNext() && chunk.size() < batchSize) {
+            ShipImportRow row = rows.next();
+            if (Objects.nonNull(row.getError()))
+                result.reject(row.getLine(), row.getError());
+            else if (!row.getShip().isValidForCreate())
+                result.reject(row.getLine(), "Invalid ship");
+            else
+                chunk.add(row);
+        }
+        return chunk;
+    }
 
-        Boolean isUsed = shipDTO.getUsed();
-        if (Objects.nonNull(isUsed))
-            p = cb.and(p, cb.equal(root.get("isUsed"), isUsed));
+    /**
+     * Сохраняет порцию строк одной транзакцией
+     *
+     * @return Номер последнего изменения флота или null, если ни одна строка не сохранена
+     */
+    private Long importChunk(List<ShipImportRow> chunk, ShipImportResult result) {
+        if (chunk.isEmpty())
+            return null;
+        try {
+            long marker = changeLog.marker();
+            Long changeSeq = insertPermits.execute(transactionTemplate, status -> importBatch(chunk, marker));
+            result.accept(chunk.size());
+            chunk.forEach(row -> trigramIndex.put(row.getShip()));
+            return changeSeq;
+        } catch (DataAccessException | PersistenceException e) {
+            if (chunk.size() == 1) {
+                result.reject(chunk.get(0).getLine(), "Database error: " + e.getMessage());
+                return null;
+            }
+            // Ошибка одной строки не должна отклонять остальные: порция повторяется пакетами JDBC,
+            // а неудачный пакет - по одной строке
+            int part = chunk.size() > AppConfig.JDBC_BATCH_SIZE ? AppConfig.JDBC_BATCH_SIZE : 1;
+            Long lastSeq = null;
+            for (int from = 0; from < chunk.size(); from += part) {
+                Long changeSeq = importChunk(chunk.subList(from, Math.min(from + part, chunk.size())), result);
+                if (Objects.nonNull(changeSeq))
+                    lastSeq = changeSeq;
+            }
+            return lastSeq;
+        }
+    }
 
-        Double minSpeed = shipDTO.getMinSpeed();
-        if (Objects.nonNull(minSpeed))
-            p = cb.and(p, cb.greaterThanOrEqualTo(root.get("speed"), minSpeed));
+    private Long importBatch(List<ShipImportRow> chunk, long marker) {
+        // Загружаемые корабли не нужны в кэше второго уровня
+        em.unwrap(Session.class).setCacheMode(CacheMode.IGNORE);
+
+        int persisted = 0;
+        for (ShipImportRow row : chunk) {
+            // После отката неудачной порции у корабля остается выданный id, его сбрасывает prepareForCreate
+            Ship ship = row.getShip();
+            ship.prepareForCreate();
+            ship.setChangeSeq(marker);
+            em.persist(ship);
+
+            // Вставки уходят в БД пакетами, а контекст постоянства не растет
+            if (++persisted % AppConfig.JDBC_BATCH_SIZE == 0) {
+                em.flush();
+                em.clear();
+            }
+        }
+        em.flush();
+        em.clear();
+        // Номер берется после записи всей порции: счетчик не занят, пока идут вставки
+        return changeLog.assign(marker);
+    }
 
-        Double maxSpeed = shipDTO.getMaxSpeed();
-        if (Objects.nonNull(maxSpeed))
-            p = cb.and(p, cb.lessThanOrEqualTo(root.get("speed"), maxSpeed));
+    @Override
+    public boolean deleteById(Long id) {
+        Long changeSeq = transactionTemplate.execute(status -> {
+            lockInEntityCache(id);
+            int deleted = em.unwrap(Session.class).doReturningWork(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(DELETE_BY_ID)) {
+                    statement.setLong(1, id);
+                    return statement.executeUpdate();
+                }
+            });
+            if (deleted == 0)
+                return null;
+            // Строка корабля уже заблокирована удалением, номер берется после нее, как и в остальных изменениях
+            long seq = changeLog.next();
+            changeLog.tombstone(Collections.singletonList(id), seq);
+            return seq;
+        });
+        if (Objects.isNull(changeSeq))
+            return false;
+
+        trigramIndex.remove(id);
+        jsonCache.evict(id);
+        queryCache.invalidate();
+        changePublisher.publish(ShipChange.deleted(id, changeSeq));
+        return true;
+    }
 
-        Integer minCrewSize = shipDTO.getMinCrewSize();
-        if (Objects.nonNull(minCrewSize))
-            p = cb.and(p, cb.greaterThanOrEqualTo(root.get("crewSize"), minCrewSize));
+    @Override
+    public Optional<Ship> update(Long id, Ship patch, Collection<Long> expectedVersions) {
+        ShipChange change = transactionTemplate.execute(status -> {
+            lockInEntityCache(id);
+            // Прежнее состояние нужно только подписчикам и читается без блокировки: если версия уже
+            // не подходит, ответ 412 отдается сразу, не дожидаясь блокировки строки чужой транзакцией
+            Ship previous = selectShip(id);
+            if (Objects.isNull(previous))
+                return null;
+            if (Objects.nonNull(expectedVersions) && !expectedVersions.contains(previous.getVersion()))
+                throw new OptimisticLockException("Ship " + id + " has changed");
+
+            long marker = changeLog.marker();
+            int updated = em.unwrap(Session.class).doReturningWork(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(updateById(expectedVersions))) {
+                    bindPatch(statement, patch, marker, id, expectedVersions);
+                    return statement.executeUpdate();
+                }
+            });
+            if (updated == 0) {
+                // Корабль изменили или удалили между чтением и изменением
+                if (Objects.isNull(expectedVersions) || Objects.isNull(selectShip(id)))
+                    return null;
+                throw new OptimisticLockException("Ship " + id + " has changed");
+            }
+
+            // Строка корабля заблокирована изменением, номер берется после нее
+            long changeSeq = changeLog.assign(marker);
+            Ship ship = selectShip(id);
+            correctRatings(Collections.singletonList(ship));
+            ship.setChangeSeq(changeSeq);
+            // Прочитанное состояние - прежнее, только если между чтением и изменением корабль не меняли;
+            // иначе подписчики получают событие без прежнего состояния
+            return ShipChange.updated(ship, ship.getVersion() == previous.getVersion() + 1 ? previous : null);
+        });
+        if (Objects.isNull(change))
+            return Optional.empty();
+
+        Ship result = change.getShip();
+        trigramIndex.put(result);
+        jsonCache.evict(id);
+        queryCache.invalidate();
+        changePublisher.publish(change);
+        return Optional.of(result);
+    }
 
-        Integer maxCrewSize = shipDTO.getMaxCrewSize();
-        if (Objects.nonNull(maxCrewSize))
-            p = cb.and(p, cb.lessThanOrEqualTo(root.get("crewSize"), maxCrewSize));
+    /**
+     * Блокирует корабль в кэше второго уровня до конца текущей транзакции, как Hibernate при изменении сущности.
+     * Запрос через JDBC обходит эту блокировку, и без нее чтение, получившее из БД прежнюю версию до коммита,
+     * могло бы положить ее в кэш уже после сброса. Пока блокировка держится, кэш не отдает корабль,
+     * а после коммита принимает только версии, прочитанные транзакциями, начатыми позже
+     */
+    private void lockInEntityCache(Long id) {
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        EntityPersister persister = session.getFactory().getMetamodel().entityPersister(Ship.class);
+        EntityDataAccess cache = persister.getCacheAccessStrategy();
+        if (Objects.isNull(cache))
+            return;
+        Object key = cache.generateCacheKey(id, persister, session.getFactory(), session.getTenantIdentifier());
+        SoftLock lock = cache.lockItem(session, key, null);
+        session.getActionQueue().registerProcess((success, completed) -> cache.unlockItem(completed, key, lock));
+    }
 
-        Double minRating = shipDTO.getMinRating();
-        if (Objects.nonNull(minRating))
-            p = cb.and(p, cb.greaterThanOrEqualTo(root.get("rating"), minRating));
+    /**
+     * Читает корабль из БД мимо кэшей, не блокируя его строку
+     *
+     * @return Корабль или null, если его нет
+     */
+    private Ship selectShip(Long id) {
+        return em.unwrap(Session.class).doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(SELECT_BY_ID)) {
+                statement.setLong(1, id);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (!resultSet.next())
+                        return null;
+                    String shipType = resultSet.getString(3);
+                    return new Ship(id, resultSet.getString(1), resultSet.getString(2),
+                            Objects.isNull(shipType) ? null : ShipType.valueOf(shipType),
+                            resultSet.getDate(4), resultSet.getObject(5, Boolean.class),
+                            resultSet.getObject(6, Double.class), resultSet.getObject(7, Integer.class),
+                            resultSet.getObject(8, Double.class), resultSet.getLong(9));
+                }
+            }
+        });
+    }
 
-        Double maxRating = shipDTO.getMaxRating();
-        if (Objects.nonNull(maxRating))
-            p = cb.and(p, cb.lessThanOrEqualTo(root.get("rating"), maxRating));
+    /**
+     * Рейтинг в запросе массового изменения вычисляется в БД, а она округляет DOUBLE по своим правилам,
+     * и на границе округления результат отличается на 0.01 от Ship.calculateRating.
+     * Таким кораблям записывается рейтинг, вычисленный в Java; обычно их нет, и лишних запросов не бывает
+     */
+    private void correctRatings(List<Ship> ships) {
+        List<Ship> corrected = new ArrayList<>();
+        for (Ship ship : ships) {
+            if (ship.recalculateRating())
+                corrected.add(ship);
+        }
+        if (corrected.isEmpty())
+            return;
+        em.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(UPDATE_RATING)) {
+                for (Ship ship : corrected) {
+                    statement.setDouble(1, ship.getRating());
+                    statement.setLong(2, ship.getId());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        });
+    }
 
-        cq.where(p);
+    /**
+     * Условие изменения одного корабля: с заголовком If-Match версия должна быть одной из ожидаемых
+     */
+    private static String updateById(Collection<Long> expectedVersions) {
+        if (Objects.isNull(expectedVersions))
+            return UPDATE_BY_ID;
+        return UPDATE_BY_ID + " and version in (" + String.join(", ", Collections.nCopies(expectedVersions.size(), "?"))
+                + ")";
+    }
 
-        ShipOrder orderBy = shipDTO.getOrderBy();
-        if (Objects.nonNull(orderBy))
-            cq.orderBy(cb.asc(root.get(orderBy.getFieldName())));
+    private static void bindPatch(PreparedStatement statement, Ship patch, long changeSeq, Long id,
+                                  Collection<Long> expectedVersions) throws SQLException {
+        // Пустые имя и название планеты, как и в Ship.update, значение не меняют
+        String name = Objects.isNull(patch.getName()) || patch.getName().isEmpty() ? null : patch.getName();
+        String planet = Objects.isNull(patch.getPlanet()) || patch.getPlanet().isEmpty() ? null : patch.getPlanet();
+        String shipType = Objects.isNull(patch.getShipType()) ? null : patch.getShipType().name();
+        java.sql.Date prodDate = Objects.isNull(patch.getProdDate()) ? null
+                : new java.sql.Date(patch.getProdDate().getTime());
+
+        statement.setLong(1, changeSeq);
+        statement.setObject(2, name, Types.VARCHAR);
+        statement.setObject(3, planet, Types.VARCHAR);
+        statement.setObject(4, shipType, Types.VARCHAR);
+        statement.setObject(5, prodDate, Types.DATE);
+        statement.setObject(6, patch.getUsed(), Types.BOOLEAN);
+        statement.setObject(7, patch.getSpeed(), Types.DOUBLE);
+        statement.setObject(8, patch.getCrewSize(), Types.INTEGER);
+        statement.setObject(9, patch.getSpeed(), Types.DOUBLE);
+        statement.setObject(10, patch.getUsed(), Types.BOOLEAN);
+        statement.setObject(11, prodDate, Types.DATE);
+        statement.setLong(12, id);
+        int index = 13;
+        if (Objects.nonNull(expectedVersions)) {
+            for (Long version : expectedVersions)
+                statement.setLong(index++, version);
+        }
+    }
 
+    @Override
+    public int updateShips(ShipDTO shipDTO, Ship patch) {
+        // Один UPDATE на все подходящие корабли; Hibernate сам сбрасывает их кэш второго уровня.
+        // Затронутые корабли находятся по номеру изменения: индекс и рейтинги обновляются только у них
+        long[] changeSeq = new long[1];
+        List<Ship> updated = transactionTemplate.execute(status -> {
+            // Строки кораблей блокируются до получения номера
+            if (queryCompiler.selectIds(shipDTO).setLockMode(LockModeType.PESSIMISTIC_WRITE).getResultList()
+                    .isEmpty())
+                return Collections.<Ship>emptyList();
+            changeSeq[0] = changeLog.next();
+            queryCompiler.update(shipDTO, patch).setParameter("changeSeq", changeSeq[0]).executeUpdate();
+            List<Ship> ships = changeLog.changedShips(changeSeq[0]);
+            correctRatings(ships);
+            return ships;
+        });
+        if (Objects.nonNull(patch.getName()) || Objects.nonNull(patch.getPlanet()))
+            updated.forEach(trigramIndex::put);
+        queryCache.invalidate();
+        if (!updated.isEmpty())
+            changePublisher.publish(ShipChange.reload(changeSeq[0]));
+        return updated.size();
+    }
 
-        return cq;
+    @Override
+    public int deleteShips(ShipDTO shipDTO) {
+        long[] changeSeq = new long[1];
+        List<Long> deleted = transactionTemplate.execute(status -> {
+            // Удаляются ровно заблокированные корабли, получившие надгробия: корабль, созданный
+            // после выборки, не должен исчезнуть без надгробия
+            List<Long> ids = queryCompiler.selectIds(shipDTO).setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                    .getResultList();
+            if (ids.isEmpty())
+                return ids;
+            for (int from = 0; from < ids.size(); from += DELETE_CHUNK_SIZE) {
+                em.createQuery(DELETE_BY_IDS)
+                        .setParameter("ids", ids.subList(from, Math.min(from + DELETE_CHUNK_SIZE, ids.size())))
+                        .executeUpdate();
+            }
+            changeSeq[0] = changeLog.next();
+            changeLog.tombstone(ids, changeSeq[0]);
+            return ids;
+        });
+        deleted.forEach(trigramIndex::remove);
+        queryCache.invalidate();
+        if (!deleted.isEmpty())
+            changePublisher.publish(ShipChange.reload(changeSeq[0]));
+        return deleted.size();
     }
 
-    private Iterable<Ship> preparePagination(ShipDTO shipDTO) {
-        CriteriaQuery<Ship> cq = prepareQuery(shipDTO);
+    @Override
+    @Transactional(readOnly = true)
+    public ShipChanges getChanges(long since, int limit) {
+        return changeLog.changesSince(since, limit);
+    }
 
-        Integer pageSize = shipDTO.getPageSize();
-        if (Objects.isNull(pageSize))
-            pageSize = 3;
+    private List<Ship> preparePagination(ShipDTO shipDTO) {
+        Integer pageSize = getPageSize(shipDTO);
 
         Integer pageNumber = shipDTO.getPageNumber();
         if (Objects.isNull(pageNumber))
             pageNumber = 0;
 
-        Iterable<Ship> result = em.createQuery(cq)
+        List<Ship> result = queryCompiler.select(shipDTO)
                 .setFirstResult(pageNumber * pageSize)
                 .setMaxResults(pageSize).getResultList();
 
         return result;
     }
 
-    private boolean isValidString(String s) {
-        return Objects.nonNull(s) && !s.isEmpty();
+    private Integer getPageSize(ShipDTO shipDTO) {
+        Integer pageSize = shipDTO.getPageSize();
+        if (Objects.isNull(pageSize))
+            pageSize = ShipDTO.DEFAULT_PAGE_SIZE;
+        return pageSize;
     }
 }
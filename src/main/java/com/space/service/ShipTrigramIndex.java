@@ -0,0 +1,215 @@
+package com.space.service;
+
+import com.space.model.Ship;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Триграммный инвертированный индекс по полям name и planet.
+ * Поиск подстроки с ведущим % не может использовать обычный индекс БД, поэтому по индексу
+ * вычисляется набор id кораблей-кандидатов, а условие LIKE проверяется уже только среди них.
+ * Индекс строится по нормализованным строкам (нижний регистр, без диакритики), поэтому
+ * кандидатов не меньше, чем нашел бы LIKE, в том числе при регистронезависимой сортировке БД.
+ */
+@Component
+public class ShipTrigramIndex implements InitializingBean {
+
+    /**
+     * Если кандидатов больше, список id перестает быть выгоднее обычного LIKE
+     */
+    private static final int MAX_CANDIDATES = 1000;
+
+    private static final int MAX_INTERSECTION = MAX_CANDIDATES * 4;
+
+    private static final int GRAM = 3;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    // Индекс публикуется одной ссылкой: перестроение собирает новый индекс в стороне и подменяет его целиком,
+    // поэтому поиск никогда не видит частично заполненный индекс
+    private volatile Fields fields = new Fields();
+
+    // Изменения, пришедшие во время перестроения; применяются к новому индексу перед его публикацией
+    private List<Consumer<Fields>> pending;
+
+    private final Lock rebuildLock = new ReentrantLock();
+
+    // Защищает pending и публикацию индекса; блокировки вместо мониторов не закрепляют виртуальные потоки
+    private final Lock changeLock = new ReentrantLock();
+
+    @Override
+    public void afterPropertiesSet() {
+        rebuild();
+    }
+
+    public void rebuild() {
+        rebuildLock.lock();
+        try {
+            reload();
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    private void reload() {
+        changeLock.lock();
+        try {
+            pending = new ArrayList<>();
+        } finally {
+            changeLock.unlock();
+        }
+        Fields rebuilt = new Fields();
+        List<Object[]> rows = em.createQuery("select s.id, s.name, s.planet from ship s", Object[].class)
+                .getResultList();
+        for (Object[] row : rows) {
+            Long id = (Long) row[0];
+            rebuilt.name.put(id, (String) row[1]);
+            rebuilt.planet.put(id, (String) row[2]);
+        }
+        changeLock.lock();
+        try {
+            pending.forEach(change -> change.accept(rebuilt));
+            pending = null;
+            fields = rebuilt;
+        } finally {
+            changeLock.unlock();
+        }
+    }
+
+    public void put(Ship ship) {
+        apply(target -> {
+            target.name.put(ship.getId(), ship.getName());
+            target.planet.put(ship.getId(), ship.getPlanet());
+        });
+    }
+
+    public void remove(Long id) {
+        apply(target -> {
+            target.name.remove(id);
+            target.planet.remove(id);
+        });
+    }
+
+    private void apply(Consumer<Fields> change) {
+        changeLock.lock();
+        try {
+            change.accept(fields);
+            if (pending != null)
+                pending.add(change);
+        } finally {
+            changeLock.unlock();
+        }
+    }
+
+    /**
+     * Возвращает id кораблей, которые могут подойти под фильтры name и planet
+     *
+     * @param shipDTO Фильтр
+     * @return Набор кандидатов (возможно пустой) или null, если индекс не может сузить поиск
+     */
+    public Set<Long> candidates(ShipDTO shipDTO) {
+        Fields current = fields;
+        Set<Long> byName = current.name.candidates(shipDTO.getName());
+        Set<Long> byPlanet = current.planet.candidates(shipDTO.getPlanet());
+        if (byName == null)
+            return byPlanet;
+        if (byPlanet == null)
+            return byName;
+
+        Set<Long> result = new HashSet<>(byName);
+        result.retainAll(byPlanet);
+        return result;
+    }
+
+    /**
+     * Приводит строку к виду, в котором ее сравнивает регистронезависимая сортировка БД:
+     * нижний регистр, без диакритики
+     */
+    static String normalize(String s) {
+        String decomposed = Normalizer.normalize(s, Normalizer.Form.NFD);
+        return decomposed.replaceAll("\\p{M}", "").toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> trigrams(String normalized) {
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i + GRAM <= normalized.length(); i++)
+            result.add(normalized.substring(i, i + GRAM));
+        return result;
+    }
+
+    private static class Fields {
+        private final Field name = new Field();
+        private final Field planet = new Field();
+    }
+
+    /**
+     * Индекс одного строкового поля: триграмма -> id кораблей и id корабля -> его триграммы.
+     * Изменяется только под changeLock или до публикации, поиск читает его без блокировок
+     */
+    private static class Field {
+
+        private final Map<String, Set<Long>> postings = new ConcurrentHashMap<>();
+        private final Map<Long, Set<String>> grams = new ConcurrentHashMap<>();
+
+        void put(Long id, String value) {
+            remove(id);
+            if (value == null)
+                return;
+            Set<String> valueGrams = trigrams(normalize(value));
+            for (String gram : valueGrams)
+                postings.computeIfAbsent(gram, g -> ConcurrentHashMap.newKeySet()).add(id);
+            grams.put(id, valueGrams);
+        }
+
+        void remove(Long id) {
+            Set<String> oldGrams = grams.remove(id);
+            if (oldGrams == null)
+                return;
+            for (String gram : oldGrams) {
+                Set<Long> ids = postings.get(gram);
+                if (ids != null) {
+                    ids.remove(id);
+                    if (ids.isEmpty())
+                        postings.remove(gram);
+                }
+            }
+        }
+
+        Set<Long> candidates(String query) {
+            // Короткие подстроки и подстроки с символами шаблона LIKE индекс не обрабатывает
+            if (query == null || query.length() < GRAM || query.indexOf('%') >= 0 || query.indexOf('_') >= 0)
+                return null;
+
+            List<Set<Long>> lists = new ArrayList<>();
+            for (String gram : trigrams(normalize(query))) {
+                Set<Long> ids = postings.get(gram);
+                if (ids == null)
+                    return Collections.emptySet();
+                lists.add(ids);
+            }
+            if (lists.isEmpty())
+                return null;
+
+            // Пересечение начинаем с самого короткого списка; если даже он слишком длинный,
+            // пересекать дорого, а выигрыш от индекса маловероятен
+            lists.sort(Comparator.comparingInt(Set::size));
+            if (lists.get(0).size() > MAX_INTERSECTION)
+                return null;
+
+            Set<Long> result = new HashSet<>(lists.get(0));
+            for (int i = 1; i < lists.size() && !result.isEmpty(); i++)
+                result.retainAll(lists.get(i));
+            return result.size() > MAX_CANDIDATES ? null : result;
+        }
+    }
+}
@@ -3,6 +3,11 @@ package com.space.controller;
 import com.space.config.AppConfig;
 import com.space.config.MyWebAppInit;
 import com.space.config.WebConfig;
+import com.space.service.ShipColumnStore;
+import com.space.service.ShipEntityCacheStatistics;
+import com.space.service.ShipJsonCache;
+import com.space.service.ShipQueryCache;
+import com.space.service.ShipTrigramIndex;
 import org.junit.Before;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,7 +17,6 @@ import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.context.jdbc.SqlConfig;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
-import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
@@ -24,7 +28,7 @@ import org.springframework.web.context.WebApplicationContext;
 public abstract class AbstractTest {
 
     WebApplicationContext context;
-    MockMvc mockMvc;
+    AsyncMockMvc mockMvc;
 
     @Autowired
     public void setContext(WebApplicationContext context) {
@@ -33,6 +37,12 @@ public abstract class AbstractTest {
 
     @Before
     public void setup() {
-        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+        // Скрипт test.sql пересоздает таблицу в обход сервиса, поэтому индексы строятся заново
+        context.getBean(ShipTrigramIndex.class).rebuild();
+        context.getBean(ShipQueryCache.class).invalidate();
+        context.getBean(ShipJsonCache.class).invalidate();
+        context.getBean(ShipEntityCacheStatistics.class).evictAll();
+        context.getBeansOfType(ShipColumnStore.class).values().forEach(ShipColumnStore::rebuild);
+        mockMvc = new AsyncMockMvc(MockMvcBuilders.webAppContextSetup(context).build());
     }
 }
@@ -0,0 +1,38 @@
+package com.space.controller;
+
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.web.method.HandlerMethod;
+
+import java.util.concurrent.CompletionStage;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+
+/**
+ * MockMvc, который для асинхронных запросов чтения сам выполняет повторную диспетчеризацию,
+ * поэтому тесты проверяют итоговый ответ так же, как для синхронных методов.
+ * Потоки событий (SseEmitter) остаются незавершенными и проверяются самими тестами
+ */
+class AsyncMockMvc {
+
+    private final MockMvc mockMvc;
+
+    AsyncMockMvc(MockMvc mockMvc) {
+        this.mockMvc = mockMvc;
+    }
+
+    ResultActions perform(RequestBuilder requestBuilder) throws Exception {
+        ResultActions actions = mockMvc.perform(requestBuilder);
+        MvcResult result = actions.andReturn();
+        if (result.getRequest().isAsyncStarted() && returnsFuture(result.getHandler()))
+            return mockMvc.perform(asyncDispatch(result));
+        return actions;
+    }
+
+    private static boolean returnsFuture(Object handler) {
+        return handler instanceof HandlerMethod
+                && CompletionStage.class.isAssignableFrom(((HandlerMethod) handler).getReturnType().getParameterType());
+    }
+}
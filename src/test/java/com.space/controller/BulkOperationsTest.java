@@ -0,0 +1,226 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.space.controller.utils.ShipInfoTest;
+import com.space.controller.utils.TestsHelper;
+import com.space.model.Ship;
+import com.space.model.ShipType;
+import com.space.service.ShipDTO;
+import com.space.service.ShipService;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class BulkOperationsTest extends AbstractTest {
+
+    private TestsHelper testsHelper = new TestsHelper();
+    private ObjectMapper mapper = new ObjectMapper();
+
+    //test1
+    @Test
+    public void bulkUpdateIsUsedRecalculatesRating() throws Exception {
+        List<ShipInfoTest> expected = testsHelper.getShipInfosByPlanet("Mars", testsHelper.getAllShips());
+
+        String response = mockMvc.perform(post("/rest/ships/bulk?planet=Mars")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"isUsed\": true}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertEquals("Не правильное количество измененных кораблей.", expected.size(), Integer.parseInt(response));
+
+        for (ShipInfoTest ship : expected) {
+            ship.isUsed = true;
+            ship.rating = rating(ship);
+            assertEquals("Корабль изменен массовым обновлением не правильно.", ship, readShip(ship.id));
+        }
+    }
+
+    //test2
+    @Test
+    public void bulkUpdateSpeedChangesOnlyFilteredShips() throws Exception {
+        List<ShipInfoTest> military = testsHelper.getShipInfosByShipType(ShipType.MILITARY, testsHelper.getAllShips());
+
+        String response = mockMvc.perform(post("/rest/ships/bulk?shipType=MILITARY")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"speed\": 0.5}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertEquals("Не правильное количество измененных кораблей.", military.size(), Integer.parseInt(response));
+
+        for (ShipInfoTest ship : testsHelper.getAllShips()) {
+            if (ship.shipType == ShipType.MILITARY) {
+                ship.speed = 0.5;
+                ship.rating = rating(ship);
+            }
+            assertEquals("Массовое обновление изменило корабль не правильно.", ship, readShip(ship.id));
+        }
+    }
+
+    //test3
+    @Test
+    public void bulkDeleteRemovesFilteredShips() throws Exception {
+        int saturn = testsHelper.getShipInfosByPlanet("Saturn", testsHelper.getAllShips()).size();
+
+        String response = mockMvc.perform(delete("/rest/ships?planet=Saturn")
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertEquals("Не правильное количество удаленных кораблей.", saturn, Integer.parseInt(response));
+
+        assertEquals("Удаленные корабли находятся по фильтру.", 0, readCount("/rest/ships/count?planet=Saturn"));
+        assertEquals("Массовое удаление удалило лишние корабли.",
+                testsHelper.getAllShips().size() - saturn, readCount("/rest/ships/count"));
+    }
+
+    //test4
+    @Test
+    public void bulkOperationsWithoutFilterReturnBadRequest() throws Exception {
+        mockMvc.perform(delete("/rest/ships")
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(post("/rest/ships/bulk")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"isUsed\": true}"))
+                .andExpect(status().isBadRequest());
+
+        assertEquals("Запрос без фильтра изменил корабли.", testsHelper.getAllShips().size(),
+                readCount("/rest/ships/count"));
+    }
+
+    //test5
+    @Test
+    public void bulkUpdateWithoutChangesReturnsBadRequest() throws Exception {
+        mockMvc.perform(post("/rest/ships/bulk?planet=Mars")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{}"))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(post("/rest/ships/bulk?planet=Mars")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"speed\": 5}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    //test6
+    @Test
+    public void ratingIsRoundedLikeShipOnEveryWritePath() throws Exception {
+        // 80 * 0.03 / (3019 - 2924 + 1) = 0.024999999999999998: в Java это 0.02, округление DOUBLE в БД дает 0.03
+        Calendar prodDate = Calendar.getInstance();
+        prodDate.clear();
+        prodDate.set(2924, Calendar.JUNE, 1);
+        String patch = "{\"speed\": 0.03, \"isUsed\": false, \"prodDate\": " + prodDate.getTimeInMillis() + "}";
+        List<ShipInfoTest> mars = testsHelper.getShipInfosByPlanet("Mars", testsHelper.getAllShips());
+
+        mockMvc.perform(post("/rest/ships/bulk?planet=Mars")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content(patch))
+                .andExpect(status().isOk());
+        for (ShipInfoTest ship : mars)
+            assertEquals("Массовое обновление округлило рейтинг не так, как Ship.", 0.02, readShip(ship.id).rating);
+
+        ShipInfoTest other = testsHelper.getShipInfosByPlanet("Earth", testsHelper.getAllShips()).get(0);
+        String response = mockMvc.perform(post("/rest/ships/" + other.id)
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content(patch))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertEquals("Обновление округлило рейтинг не так, как Ship.", 0.02,
+                mapper.readValue(response, ShipInfoTest.class).rating);
+        assertEquals("Сохраненный рейтинг отличается от ответа.", 0.02, readShip(other.id).rating);
+    }
+
+    //test7
+    @Test
+    public void bulkRenameIsFoundBySubstring() throws Exception {
+        int mars = testsHelper.getShipInfosByPlanet("Mars", testsHelper.getAllShips()).size();
+
+        mockMvc.perform(post("/rest/ships/bulk?planet=Mars")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"name\": \"Renamed\"}"))
+                .andExpect(status().isOk());
+
+        assertEquals("Переименованные корабли не находятся по новому имени.", mars,
+                readCount("/rest/ships/count?name=enamed"));
+    }
+
+    //test8
+    @Test
+    public void concurrentDeleteAndBulkUpdateDoNotDeadlock() throws Exception {
+        // Удаление блокирует строку корабля, массовое обновление - все подходящие строки; оба берут номер
+        // изменения после строк, иначе они ждали бы друг друга до таймаута блокировки
+        ShipService shipService = context.getBean(ShipService.class);
+        ShipDTO allShips = new ShipDTO(null, null, null, null, null, null, null, null, null, 9999, null, null,
+                null, null, null);
+        List<ShipInfoTest> ships = testsHelper.getAllShips();
+        CyclicBarrier start = new CyclicBarrier(2);
+
+        CompletableFuture<Void> deletes = CompletableFuture.runAsync(() -> {
+            await(start);
+            for (ShipInfoTest ship : ships)
+                shipService.deleteById(ship.id);
+        });
+        CompletableFuture<Void> updates = CompletableFuture.runAsync(() -> {
+            await(start);
+            for (int i = 0; i < ships.size(); i++)
+                shipService.updateShips(allShips, new Ship(null, null, null, null, null, 0.5, null));
+        });
+        deletes.get(30, TimeUnit.SECONDS);
+        updates.get(30, TimeUnit.SECONDS);
+
+        assertEquals("Не все корабли удалены.", 0, readCount("/rest/ships/count"));
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ShipInfoTest readShip(Long id) throws Exception {
+        String response = mockMvc.perform(get("/rest/ships/" + id)
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return mapper.readValue(response, ShipInfoTest.class);
+    }
+
+    private int readCount(String url) throws Exception {
+        String response = mockMvc.perform(get(url)
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return Integer.parseInt(response);
+    }
+
+    private static Double rating(ShipInfoTest ship) {
+        Calendar prodDate = Calendar.getInstance();
+        prodDate.setTimeInMillis(ship.prodDate);
+        double k = ship.isUsed ? 0.5 : 1;
+        double rating = 80 * ship.speed * k / (3019 - prodDate.get(Calendar.YEAR) + 1);
+        return new BigDecimal(Double.toString(rating)).setScale(2, RoundingMode.HALF_UP).doubleValue();
+    }
+}
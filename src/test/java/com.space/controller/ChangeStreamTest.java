@@ -0,0 +1,139 @@
+package com.space.controller;
+
+import com.space.controller.utils.TestsHelper;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class ChangeStreamTest extends AbstractTest {
+
+    private static final long WAIT_MILLIS = 5000;
+
+    @After
+    public void closeStreams() {
+        context.getBean(ShipChangeStream.class).completeAll();
+    }
+
+    //test1
+    @Test
+    public void subscriberReceivesMatchingChanges() throws Exception {
+        MockHttpServletResponse stream = subscribe("/rest/ships/stream?planet=Earth");
+
+        mockMvc.perform(post("/rest/ships")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content(TestsHelper.NORMAL_JSON))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/rest/ships/2")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"speed\": 0.5}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/rest/ships/3")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"speed\": 0.5}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(delete("/rest/ships/1"))
+                .andExpect(status().isOk());
+
+        // События одного подписчика отправляются по порядку, удаление приходит последним
+        String events = await(stream, "event:delete\ndata:1\n\n");
+        assertTrue("Не пришло событие о новом корабле.",
+                events.matches("(?s).*event:create\ndata:\\{\"id\":\\d+,\"name\":\"123456789\".*"));
+        assertTrue("Не пришло событие об изменении корабля с Земли.",
+                events.contains("event:update\ndata:{\"id\":3,"));
+        assertFalse("Пришло событие о корабле, не подходящем под фильтр.", events.contains("Daedalus"));
+    }
+
+    //test2
+    @Test
+    public void bulkChangesAskToReload() throws Exception {
+        MockHttpServletResponse stream = subscribe("/rest/ships/stream");
+
+        mockMvc.perform(delete("/rest/ships?planet=Mars"))
+                .andExpect(status().isOk());
+
+        await(stream, "event:reload");
+    }
+
+    //test3
+    @Test
+    public void closedStreamsAreForgotten() throws Exception {
+        ShipChangeStream changeStream = context.getBean(ShipChangeStream.class);
+        changeStream.completeAll();
+
+        subscribe("/rest/ships/stream");
+        subscribe("/rest/ships/stream?shipType=MILITARY");
+        assertEquals("Подписки не зарегистрированы.", 2, changeStream.getSubscribers());
+
+        changeStream.completeAll();
+        assertEquals("Закрытые подписки остались в рассылке.", 0, changeStream.getSubscribers());
+    }
+
+    //test4
+    @Test
+    public void shipLeavingFilterIsReported() throws Exception {
+        MockHttpServletResponse stream = subscribe("/rest/ships/stream?planet=Earth");
+
+        // Корабль с Юпитера и до, и после изменения не подходит под фильтр
+        mockMvc.perform(post("/rest/ships/2")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"planet\": \"Pluto\"}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/rest/ships/3")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"planet\": \"Pluto\"}"))
+                .andExpect(status().isOk());
+
+        String events = await(stream, "event:leave\ndata:3\n\n");
+        assertFalse("Пришло событие о корабле, не подходившем под фильтр.", events.contains("data:2\n"));
+        assertFalse("Вышедший из фильтра корабль пришел как изменение.", events.contains("event:update"));
+    }
+
+    //test5
+    @Test
+    public void filterIgnoresCaseLikeDatabase() throws Exception {
+        MockHttpServletResponse stream = subscribe("/rest/ships/stream?planet=eARTH&name=EAGLE");
+
+        mockMvc.perform(post("/rest/ships/3")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"speed\": 0.5}"))
+                .andExpect(status().isOk());
+
+        await(stream, "event:update\ndata:{\"id\":3,");
+    }
+
+    private MockHttpServletResponse subscribe(String url) throws Exception {
+        MockHttpServletResponse response = mockMvc.perform(get(url).accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn().getResponse();
+        assertTrue("Не правильный тип содержимого подписки.",
+                MediaType.TEXT_EVENT_STREAM.isCompatibleWith(MediaType.parseMediaType(response.getContentType())));
+        return response;
+    }
+
+    private static String await(MockHttpServletResponse stream, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        String events = stream.getContentAsString();
+        while (!events.contains(expected) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            events = stream.getContentAsString();
+        }
+        assertTrue("Событие " + expected + " не пришло.", events.contains(expected));
+        return events;
+    }
+}
@@ -0,0 +1,134 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.space.controller.utils.TestsHelper;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class ChangesTest extends AbstractTest {
+
+    private ObjectMapper mapper = new ObjectMapper();
+
+    //test1
+    @Test
+    public void fullSyncReturnsWholeFleetInPages() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        String since = "";
+        JsonNode page;
+        do {
+            page = changes(since + "&pageSize=15");
+            for (JsonNode change : page.get("changes")) {
+                assertEquals("Без изменений все корабли должны прийти как созданные.", "CREATE",
+                        change.get("type").asText());
+                ids.add(change.get("id").asLong());
+            }
+            since = "since=" + page.get("watermark").asLong();
+        } while (page.get("hasMore").asBoolean());
+
+        assertEquals("Полная выдача вернула не все корабли.", 40, ids.size());
+        assertEquals("Полная выдача вернула корабль несколько раз.", 40, ids.stream().distinct().count());
+    }
+
+    //test2
+    @Test
+    public void deltaContainsOnlyChangesAfterWatermark() throws Exception {
+        long watermark = lastWatermark();
+
+        mockMvc.perform(post("/rest/ships/5")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"planet\": \"Pluto\"}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(delete("/rest/ships/7"))
+                .andExpect(status().isOk());
+        String created = mockMvc.perform(post("/rest/ships")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content(TestsHelper.NORMAL_JSON))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        long createdId = mapper.readTree(created).get("id").asLong();
+
+        JsonNode page = changes("since=" + watermark);
+        JsonNode changes = page.get("changes");
+        assertEquals("Выдача изменений содержит лишние корабли.", 3, changes.size());
+        assertChange(changes.get(0), "UPDATE", 5);
+        assertEquals("Изменение пришло без нового состояния корабля.", "Pluto",
+                changes.get(0).get("ship").get("planet").asText());
+        assertChange(changes.get(1), "DELETE", 7);
+        assertTrue("Удаление пришло с кораблем.", changes.get(1).get("ship").isNull());
+        assertChange(changes.get(2), "CREATE", createdId);
+        assertFalse("После последнего изменения не должно быть следующей страницы.",
+                page.get("hasMore").asBoolean());
+        assertTrue("Водяной знак не сдвинулся.", page.get("watermark").asLong() > watermark);
+
+        JsonNode empty = changes("since=" + page.get("watermark").asLong());
+        assertEquals("После нового водяного знака изменений быть не должно.", 0, empty.get("changes").size());
+        assertEquals("Водяной знак без изменений должен остаться прежним.", page.get("watermark").asLong(),
+                empty.get("watermark").asLong());
+    }
+
+    //test3
+    @Test
+    public void bulkChangesAreNotSplitBetweenPages() throws Exception {
+        long watermark = lastWatermark();
+
+        mockMvc.perform(delete("/rest/ships?planet=Saturn"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/rest/ships/1")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"speed\": 0.5}"))
+                .andExpect(status().isOk());
+
+        // Удаление кораблей с Сатурна - одно изменение больше страницы, оно возвращается целиком
+        JsonNode first = changes("since=" + watermark + "&pageSize=2");
+        assertTrue("Массовое удаление разделено между страницами.", first.get("changes").size() > 2);
+        for (JsonNode change : first.get("changes"))
+            assertEquals("Массовое удаление должно прийти надгробиями.", "DELETE", change.get("type").asText());
+        assertTrue("Не сообщается о следующей странице.", first.get("hasMore").asBoolean());
+
+        JsonNode second = changes("since=" + first.get("watermark").asLong() + "&pageSize=2");
+        assertEquals("Вторая страница должна содержать только последнее изменение.", 1,
+                second.get("changes").size());
+        assertChange(second.get("changes").get(0), "UPDATE", 1);
+    }
+
+    //test4
+    @Test
+    public void invalidWatermarkIsRejected() throws Exception {
+        mockMvc.perform(get("/rest/ships/changes?since=-5").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/rest/ships/changes?pageSize=0").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isBadRequest());
+    }
+
+    private long lastWatermark() throws Exception {
+        return changes("pageSize=1000").get("watermark").asLong();
+    }
+
+    private JsonNode changes(String query) throws Exception {
+        String response = mockMvc.perform(get("/rest/ships/changes?" + query)
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return mapper.readTree(response);
+    }
+
+    private static void assertChange(JsonNode change, String type, long id) {
+        assertEquals("Не правильный тип изменения.", type, change.get("type").asText());
+        assertEquals("Не правильный корабль изменения.", id, change.get("id").asLong());
+    }
+}
@@ -0,0 +1,113 @@
+package com.space.controller;
+
+import com.space.model.Ship;
+import com.space.service.ShipDTO;
+import com.space.service.ShipService;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Задержка выдачи колоночного движка без записи и под одновременной записью отдельных кораблей.
+ * Запускается профилем benchmark: mvn -Pbenchmark test. Читатели запрашивают страницу с сортировкой по скорости,
+ * писатель без пауз меняет скорость случайного корабля, то есть его место в перестановке
+ */
+@ActiveProfiles({"dev", "columnar"})
+public class ColumnarBenchmark extends AbstractTest {
+
+    private static final int FLEET_SIZE = 100_000;
+    private static final int READERS = 4;
+    private static final int READS_PER_READER = 5_000;
+
+    private static final ShipDTO FILTER = new ShipDTO(null, "Mars", null, null, null, null, 0.1, null, null, null,
+            null, null, 10, 20, ShipOrder.SPEED);
+
+    private ShipService shipService;
+
+    @Before
+    public void setupFleet() {
+        new JdbcTemplate(context.getBean("primaryDataSource", DataSource.class)).update(
+                "insert into ship(name, planet, shipType, prodDate, isUsed, speed, crewSize, rating) " +
+                "select concat('Ship ', x), case mod(x, 4) when 0 then 'Mars' when 1 then 'Venus' " +
+                "when 2 then 'Earth' else 'Saturn' end, 'MERCHANT', '3000-01-01', false, " +
+                "mod(x, 99) / 100.0 + 0.01, mod(x, 9999) + 1, 1.0 from system_range(1, ?)", FLEET_SIZE);
+        shipService = context.getBean(ShipService.class);
+        setup();
+    }
+
+    @Test
+    public void readLatencyWithConcurrentWrites() throws Exception {
+        measureReads();
+        long[] idle = measureReads();
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicLong writes = new AtomicLong();
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        long start = System.nanoTime();
+        Future<?> updates = writer.submit(() -> {
+            while (writing.get()) {
+                long id = ThreadLocalRandom.current().nextLong(1, FLEET_SIZE) + 40;
+                Ship patch = new Ship(null, null, null, null, null, null,
+                        ThreadLocalRandom.current().nextInt(1, 100) / 100.0, null, null);
+                shipService.update(id, patch, null);
+                writes.incrementAndGet();
+            }
+        });
+        long[] loaded;
+        try {
+            loaded = measureReads();
+        } finally {
+            writing.set(false);
+            updates.get();
+            writer.shutdown();
+        }
+        double writeRate = writes.get() / ((System.nanoTime() - start) / 1e9);
+
+        System.out.printf("ColumnarBenchmark: %d ships, %d readers, page read p50 %.3f ms, p99 %.3f ms; " +
+                        "with a writer (%.0f updates/s) p50 %.3f ms, p99 %.3f ms%n",
+                FLEET_SIZE, READERS, percentile(idle, 50), percentile(idle, 99), writeRate,
+                percentile(loaded, 50), percentile(loaded, 99));
+    }
+
+    /**
+     * @return Отсортированные задержки чтений в наносекундах
+     */
+    private long[] measureReads() throws Exception {
+        ExecutorService readers = Executors.newFixedThreadPool(READERS);
+        List<Future<long[]>> results = new ArrayList<>();
+        for (int i = 0; i < READERS; i++)
+            results.add(readers.submit(() -> {
+                long[] latencies = new long[READS_PER_READER];
+                for (int j = 0; j < READS_PER_READER; j++) {
+                    long start = System.nanoTime();
+                    shipService.getPage(FILTER);
+                    latencies[j] = System.nanoTime() - start;
+                }
+                return latencies;
+            }));
+        long[] all = new long[READERS * READS_PER_READER];
+        for (int i = 0; i < READERS; i++)
+            System.arraycopy(results.get(i).get(), 0, all, i * READS_PER_READER, READS_PER_READER);
+        readers.shutdown();
+        readers.awaitTermination(1, TimeUnit.MINUTES);
+        Arrays.sort(all);
+        return all;
+    }
+
+    private static double percentile(long[] sorted, int percent) {
+        return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)] / 1e6;
+    }
+}
@@ -0,0 +1,124 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.space.controller.utils.ShipInfoTest;
+import com.space.controller.utils.TestsHelper;
+import com.space.model.ShipType;
+import com.space.service.ShipColumnStore;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ActiveProfiles({"dev", "columnar"})
+public class ColumnarEngineTest extends AbstractTest {
+
+    private TestsHelper testsHelper = new TestsHelper();
+    private ObjectMapper mapper = new ObjectMapper();
+    private TypeReference<List<ShipInfoTest>> typeReference = new TypeReference<List<ShipInfoTest>>() {
+    };
+
+    //test1
+    @Test
+    public void filtersOrderAndPageMatchDatabase() throws Exception {
+        // Подстрока планеты сравнивается без учета регистра, как LIKE в MySQL: "ur" находит и Uranus
+        List<ShipInfoTest> byPlanet = new ArrayList<>(testsHelper.getShipInfosByPlanet("ur",
+                testsHelper.getAllShips()));
+        byPlanet.addAll(testsHelper.getShipInfosByPlanet("Ur", testsHelper.getAllShips()));
+        List<ShipInfoTest> expected = testsHelper.getShipInfosByPage(1, 2,
+                testsHelper.getShipInfosByOrder(ShipOrder.SPEED,
+                        testsHelper.getShipInfosByMinCrewSize(100, byPlanet)));
+
+        assertEquals("Колоночный движок возвращает не правильную страницу.",
+                expected, readShips("/rest/ships?planet=ur&minCrewSize=100&order=SPEED&pageNumber=1&pageSize=2"));
+    }
+
+    //test2
+    @Test
+    public void countMatchesDatabase() throws Exception {
+        int expected = testsHelper.getShipInfosByIsUsed(false,
+                testsHelper.getShipInfosByShipType(ShipType.MILITARY,
+                        testsHelper.getShipInfosByMaxRating(2.,
+                                testsHelper.getAllShips()))).size();
+
+        String actual = mockMvc.perform(get("/rest/ships/count?shipType=MILITARY&isUsed=false&maxRating=2")
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertEquals("Колоночный движок возвращает не правильное количество.", expected, Integer.parseInt(actual));
+    }
+
+    //test3
+    @Test
+    public void deletedShipDisappearsFromSnapshot() throws Exception {
+        mockMvc.perform(delete("/rest/ships/1")
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk());
+
+        List<ShipInfoTest> expected = testsHelper.getShipInfosByPage(0, 3, testsHelper.getAllShips());
+        expected.remove(0);
+        List<ShipInfoTest> actual = readShips("/rest/ships?pageSize=2");
+        assertEquals("Удаленный корабль остается в колоночном снимке.", expected, actual);
+    }
+
+    //test4
+    @Test
+    public void substringFiltersIgnoreCaseLikeMysql() throws Exception {
+        // Под регистронезависимой сортировкой MySQL (utf8_general_ci) LIKE не различает регистр
+        List<ShipInfoTest> expected = testsHelper.getShipInfosByPlanet("Mercury",
+                testsHelper.getShipInfosByName("Excal", testsHelper.getAllShips()));
+
+        assertEquals("Колоночный движок различает регистр в подстроках name и planet.",
+                expected, readShips("/rest/ships?name=eXCAL&planet=MERCURY"));
+    }
+
+    //test5
+    @Test
+    public void writesKeepEveryOrderLikeRebuild() throws Exception {
+        mockMvc.perform(post("/rest/ships/1")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"speed\": 0.99}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(delete("/rest/ships/2"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/rest/ships")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"name\": \"Новый\", \"planet\": \"Mars\", \"shipType\": \"MERCHANT\", " +
+                        "\"prodDate\": 32000000000000, \"speed\": 0.3, \"crewSize\": 10}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/rest/ships/bulk?shipType=MILITARY")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"speed\": 0.5}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(delete("/rest/ships?planet=Saturn"))
+                .andExpect(status().isOk());
+
+        List<List<ShipInfoTest>> maintained = readEveryOrder();
+        context.getBean(ShipColumnStore.class).rebuild();
+        assertEquals("После изменений порядок снимка отличается от перестроенного.", readEveryOrder(), maintained);
+    }
+
+    private List<List<ShipInfoTest>> readEveryOrder() throws Exception {
+        List<List<ShipInfoTest>> result = new ArrayList<>();
+        for (ShipOrder order : ShipOrder.values())
+            result.add(readShips("/rest/ships?pageSize=100&order=" + order));
+        return result;
+    }
+
+    private List<ShipInfoTest> readShips(String url) throws Exception {
+        String content = mockMvc.perform(get(url)
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return mapper.readValue(content, typeReference);
+    }
+}
@@ -0,0 +1,162 @@
+package com.space.controller;
+
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.util.AssertionErrors.assertNotEquals;
+import static org.springframework.test.util.AssertionErrors.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class ConditionalRequestTest extends AbstractTest {
+
+    //test1
+    @Test
+    public void unchangedShipReturnsNotModified() throws Exception {
+        String eTag = mockMvc.perform(get("/rest/ships/1").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertEquals("Не правильный ETag нового корабля.", "\"0\"", eTag);
+
+        MockHttpServletResponse response = mockMvc.perform(get("/rest/ships/1")
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isNotModified())
+                .andReturn().getResponse();
+        assertEquals("Ответ 304 не должен содержать тело.", "", response.getContentAsString());
+    }
+
+    //test2
+    @Test
+    public void updatedShipChangesETag() throws Exception {
+        String response = mockMvc.perform(post("/rest/ships/1")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"planet\": \"Pluto\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertEquals("Изменение не увеличило версию корабля.", "\"1\"", response);
+
+        mockMvc.perform(get("/rest/ships/1")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"0\"")
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk());
+    }
+
+    //test3
+    @Test
+    public void ifMatchRejectsStaleVersion() throws Exception {
+        mockMvc.perform(post("/rest/ships/2")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .header(HttpHeaders.IF_MATCH, "\"0\"")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"planet\": \"Pluto\"}"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(post("/rest/ships/2")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .header(HttpHeaders.IF_MATCH, "\"0\"")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"planet\": \"Mars\"}"))
+                .andExpect(status().isPreconditionFailed());
+
+        String eTag = mockMvc.perform(get("/rest/ships/2").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertEquals("Отклоненное изменение изменило корабль.", "\"1\"", eTag);
+
+        mockMvc.perform(post("/rest/ships/426")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .header(HttpHeaders.IF_MATCH, "\"0\"")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"planet\": \"Mars\"}"))
+                .andExpect(status().isNotFound());
+    }
+
+    //test4
+    @Test
+    public void unchangedListReturnsNotModified() throws Exception {
+        String eTag = mockMvc.perform(get("/rest/ships?planet=Mars").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/rest/ships?planet=Mars")
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isNotModified());
+
+        mockMvc.perform(post("/rest/ships/1")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"speed\": 0.5}"))
+                .andExpect(status().isOk());
+
+        String changed = mockMvc.perform(get("/rest/ships?planet=Mars")
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals("ETag списка не изменился после изменения корабля.", eTag, changed);
+    }
+
+    //test5
+    @Test
+    public void ifMatchAcceptsAnyListedVersion() throws Exception {
+        mockMvc.perform(post("/rest/ships/3")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .header(HttpHeaders.IF_MATCH, "\"7\", \"0\"")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"planet\": \"Pluto\"}"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(post("/rest/ships/3")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .header(HttpHeaders.IF_MATCH, "\"0\", W/\"1\", \"2\"")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"planet\": \"Mars\"}"))
+                .andExpect(status().isPreconditionFailed());
+
+        String eTag = mockMvc.perform(post("/rest/ships/3")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .header(HttpHeaders.IF_MATCH, "\"0\",\"1\"")
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"planet\": \"Mars\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertEquals("Изменение по списку ETag не увеличило версию.", "\"2\"", eTag);
+    }
+
+    //test6
+    @Test
+    public void staleIfMatchDoesNotWaitForRowLock() throws Exception {
+        // Другая транзакция держит строку корабля, не завершаясь
+        try (Connection connection = context.getBean("primaryDataSource", DataSource.class).getConnection();
+             Statement statement = connection.createStatement()) {
+            connection.setAutoCommit(false);
+            statement.executeUpdate("update ship set crewSize = crewSize where id = 4");
+            try {
+                long start = System.nanoTime();
+                mockMvc.perform(post("/rest/ships/4")
+                        .contentType(MediaType.APPLICATION_JSON_UTF8)
+                        .header(HttpHeaders.IF_MATCH, "\"7\"")
+                        .accept(MediaType.APPLICATION_JSON_UTF8)
+                        .content("{\"planet\": \"Mars\"}"))
+                        .andExpect(status().isPreconditionFailed());
+                long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+                assertTrue("Несовпавшая версия ждала блокировки строки: " + elapsedMillis + " мс.",
+                        elapsedMillis < 500);
+            } finally {
+                connection.rollback();
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.space.controller;
+
+import com.space.config.ConnectionPoolMetrics;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+
+import javax.sql.DataSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class ConnectionPoolTest extends AbstractTest {
+
+    //test1
+    @Test
+    public void requestsBorrowConnectionsFromPool() throws Exception {
+        assertTrue("Источник данных не является пулом соединений.",
+                context.getBean("primaryDataSource", DataSource.class) instanceof HikariDataSource);
+
+        ConnectionPoolMetrics metrics = context.getBean(ConnectionPoolMetrics.class);
+        long acquisitions = metrics.getAcquisitions();
+
+        mockMvc.perform(get("/rest/ships?planet=Mars").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/rest/ships/count?planet=Jupiter").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk());
+
+        assertTrue("Запросы не получали соединения из пула.", metrics.getAcquisitions() >= acquisitions + 2);
+        assertEquals("Все соединения должны вернуться в пул.", 0, metrics.getActiveConnections());
+        assertTrue("Пул не держит открытых соединений.", metrics.getTotalConnections() > 0);
+        assertEquals("Не должно быть таймаутов получения соединения.", 0, metrics.getTimeouts());
+    }
+}
@@ -7,8 +7,11 @@ import com.space.model.ShipType;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.web.servlet.ResultActions;
 
+import javax.sql.DataSource;
+
 import static org.springframework.test.util.AssertionErrors.assertEquals;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -98,6 +101,7 @@ public class CreateShipTest extends AbstractTest {
 
         String contentAsString = resultActions.andReturn().getResponse().getContentAsString();
         ShipInfoTest actual = mapper.readValue(contentAsString, ShipInfoTest.class);
+        readIdFromDb();
         assertEquals("Возвращается не правильный результат при запросе создания корабля без параметра isUsed.", expected, actual);
     }
 
@@ -112,6 +116,7 @@ public class CreateShipTest extends AbstractTest {
 
         String contentAsString = resultActions.andReturn().getResponse().getContentAsString();
         ShipInfoTest actual = mapper.readValue(contentAsString, ShipInfoTest.class);
+        readIdFromDb();
         assertEquals("Возвращается не правильный результат при запросе создания корабля с параметром isUsed.", expected, actual);
     }
 
@@ -129,6 +134,16 @@ public class CreateShipTest extends AbstractTest {
 
         String contentAsString = resultActions.andReturn().getResponse().getContentAsString();
         ShipInfoTest actual = mapper.readValue(contentAsString, ShipInfoTest.class);
+        readIdFromDb();
         assertEquals("Возвращается не правильный результат при запросе создания корабля с параметром isUsed.", expected, actual);
     }
+
+    /**
+     * Id выдаются блоками, и Hibernate хранит начатый блок между тестами, поэтому ожидаемый id
+     * читается из БД: это id единственной строки с именем созданного корабля
+     */
+    private void readIdFromDb() {
+        expected.id = new JdbcTemplate(context.getBean("primaryDataSource", DataSource.class))
+                .queryForObject("select id from ship where name = ?", Long.class, expected.name);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.space.controller.utils.ShipInfoTest;
+import com.space.controller.utils.TestsHelper;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class CursorPaginationTest extends AbstractTest {
+
+    private TestsHelper testsHelper = new TestsHelper();
+    private ObjectMapper mapper = new ObjectMapper();
+    private TypeReference<List<ShipInfoTest>> typeReference = new TypeReference<List<ShipInfoTest>>() {
+    };
+
+    //test1
+    @Test
+    public void cursorPagesCoverAllShipsOrderedById() throws Exception {
+        List<ShipInfoTest> expected = testsHelper.getAllShips();
+        expected.sort(Comparator.comparing((ShipInfoTest s) -> s.id));
+
+        assertEquals("Постраничная выдача по курсору с сортировкой по id возвращает не все корабли.",
+                expected, readAllPages("/rest/ships?pageSize=4&order=ID"));
+    }
+
+    //test2
+    @Test
+    public void cursorPagesCoverAllShipsOrderedBySpeed() throws Exception {
+        List<ShipInfoTest> expected = testsHelper.getAllShips();
+        expected.sort(Comparator.comparing((ShipInfoTest s) -> s.speed).thenComparing(s -> s.id));
+
+        assertEquals("Постраничная выдача по курсору с сортировкой по speed возвращает не все корабли.",
+                expected, readAllPages("/rest/ships?pageSize=5&order=SPEED"));
+    }
+
+    //test3
+    @Test
+    public void cursorPagesCoverAllShipsOrderedByRatingWithFilter() throws Exception {
+        List<ShipInfoTest> expected = testsHelper.getShipInfosByPlanet("ur", testsHelper.getAllShips());
+        expected.sort(Comparator.comparing((ShipInfoTest s) -> s.rating).thenComparing(s -> s.id));
+
+        assertEquals("Постраничная выдача по курсору с фильтром и сортировкой по rating возвращает не все корабли.",
+                expected, readAllPages("/rest/ships?planet=ur&pageSize=2&order=RATING"));
+    }
+
+    //test4
+    @Test
+    public void cursorPagesCoverAllShipsOrderedByDate() throws Exception {
+        List<ShipInfoTest> expected = testsHelper.getAllShips();
+        expected.sort(Comparator.comparing((ShipInfoTest s) -> s.prodDate).thenComparing(s -> s.id));
+
+        assertEquals("Постраничная выдача по курсору с сортировкой по prodDate возвращает не все корабли.",
+                expected, readAllPages("/rest/ships?pageSize=3&order=DATE"));
+    }
+
+    //test5
+    @Test
+    public void brokenCursorReturnsBadRequest() throws Exception {
+        mockMvc.perform(get("/rest/ships?cursor=broken")
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isBadRequest());
+    }
+
+    private List<ShipInfoTest> readAllPages(String url) throws Exception {
+        List<ShipInfoTest> result = new ArrayList<>();
+        String cursor = "";
+        while (cursor != null) {
+            MockHttpServletResponse response = mockMvc.perform(get(url + "&cursor=" + cursor)
+                    .accept(MediaType.APPLICATION_JSON_UTF8))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse();
+            result.addAll(mapper.readValue(response.getContentAsString(), typeReference));
+            cursor = response.getHeader(ShipController.NEXT_CURSOR_HEADER);
+        }
+        return result;
+    }
+}
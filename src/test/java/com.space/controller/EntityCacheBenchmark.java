@@ -0,0 +1,57 @@
+package com.space.controller;
+
+import com.space.service.ShipEntityCacheStatistics;
+import com.space.service.ShipService;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.junit.Test;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Пропускная способность ShipService.findById с кэшем второго уровня и без него.
+ * Запускается профилем benchmark: mvn -Pbenchmark test. Каждый вызов выполняется в своей транзакции,
+ * чтобы корабль не брался из контекста постоянства; без кэша сессия читает корабли в режиме CacheMode.IGNORE.
+ * H2 в памяти отвечает без сетевого обмена, поэтому здесь замер показывает накладные расходы кэша,
+ * а выигрыш появляется только на БД по сети
+ */
+public class EntityCacheBenchmark extends AbstractTest {
+
+    private static final int SHIPS = 40;
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 100_000;
+
+    @Test
+    public void findByIdWithCacheOnAndOff() {
+        for (CacheMode mode : new CacheMode[]{CacheMode.NORMAL, CacheMode.IGNORE})
+            run(mode, WARMUP);
+        ShipEntityCacheStatistics statistics = context.getBean(ShipEntityCacheStatistics.class);
+        long hits = statistics.getHits();
+        double cached = run(CacheMode.NORMAL, ITERATIONS);
+        hits = statistics.getHits() - hits;
+        double uncached = run(CacheMode.IGNORE, ITERATIONS);
+        System.out.printf("EntityCacheBenchmark: findById cache on %.0f ops/s (%d of %d from cache), " +
+                "cache off %.0f ops/s%n", cached, hits, ITERATIONS, uncached);
+    }
+
+    private double run(CacheMode mode, int iterations) {
+        EntityManagerFactory emf = context.getBean(EntityManagerFactory.class);
+        ShipService shipService = context.getBean(ShipService.class);
+        TransactionTemplate transaction = context.getBean("readOnlyTransaction", TransactionTemplate.class);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            long id = i % SHIPS + 1;
+            boolean found = transaction.execute(status -> {
+                EntityManagerFactoryUtils.getTransactionalEntityManager(emf).unwrap(Session.class).setCacheMode(mode);
+                return shipService.findById(id).isPresent();
+            });
+            assertTrue("Корабль не найден.", found);
+        }
+        return iterations / ((System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,151 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.space.controller.utils.ShipInfoTest;
+import com.space.model.Ship;
+import com.space.service.ShipEntityCacheStatistics;
+import com.space.service.ShipService;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PreLoadEvent;
+import org.hibernate.event.spi.PreLoadEventListener;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class EntityCacheTest extends AbstractTest {
+
+    private ObjectMapper mapper = new ObjectMapper();
+
+    //test1
+    @Test
+    public void repeatedGetIsServedFromEntityCache() throws Exception {
+        ShipEntityCacheStatistics statistics = context.getBean(ShipEntityCacheStatistics.class);
+
+        mockMvc.perform(get("/rest/ships/5").accept(MediaType.APPLICATION_JSON_UTF8)).andExpect(status().isOk());
+        long hits = statistics.getHits();
+        mockMvc.perform(get("/rest/ships/5").accept(MediaType.APPLICATION_JSON_UTF8)).andExpect(status().isOk());
+
+        assertTrue("Повторный запрос корабля по id не попал в кэш второго уровня.", statistics.getHits() > hits);
+    }
+
+    //test2
+    @Test
+    public void cachedShipFollowsUpdateAndDelete() throws Exception {
+        mockMvc.perform(get("/rest/ships/5").accept(MediaType.APPLICATION_JSON_UTF8)).andExpect(status().isOk());
+
+        mockMvc.perform(post("/rest/ships/5")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"planet\": \"Pluto\"}"))
+                .andExpect(status().isOk());
+        String content = mockMvc.perform(get("/rest/ships/5").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertEquals("После обновления из кэша возвращается устаревший корабль.",
+                "Pluto", mapper.readValue(content, ShipInfoTest.class).planet);
+
+        mockMvc.perform(delete("/rest/ships/5").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/rest/ships/5").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isNotFound());
+    }
+
+    //test3
+    @Test
+    public void singleShipChangesKeepOtherShipsCached() throws Exception {
+        ShipEntityCacheStatistics statistics = context.getBean(ShipEntityCacheStatistics.class);
+        mockMvc.perform(get("/rest/ships/5").accept(MediaType.APPLICATION_JSON_UTF8)).andExpect(status().isOk());
+
+        mockMvc.perform(post("/rest/ships/6")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"planet\": \"Pluto\"}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(delete("/rest/ships/7").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk());
+
+        long hits = statistics.getHits();
+        mockMvc.perform(get("/rest/ships/5").accept(MediaType.APPLICATION_JSON_UTF8)).andExpect(status().isOk());
+        assertTrue("Изменение другого корабля сбросило корабль из кэша второго уровня.",
+                statistics.getHits() > hits);
+    }
+
+    //test4
+    @Test
+    public void readRacingUpdateDoesNotCacheOldShip() throws Exception {
+        // Чтение получает строку из БД до коммита изменения, а кладет ее в кэш уже после него
+        PauseBeforeCachePut pause = PauseBeforeCachePut.register(context.getBean(EntityManagerFactory.class));
+        ShipService shipService = context.getBean(ShipService.class);
+        CompletableFuture<Optional<Ship>> read = CompletableFuture.supplyAsync(() -> {
+            pause.thread = Thread.currentThread();
+            return shipService.findById(1L);
+        });
+        assertTrue("Чтение не дошло до загрузки корабля.", pause.loaded.await(10, TimeUnit.SECONDS));
+
+        mockMvc.perform(post("/rest/ships/1")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"planet\": \"Pluto\"}"))
+                .andExpect(status().isOk());
+        pause.resume.countDown();
+        assertEquals("Чтение до коммита должно вернуть прежнюю версию.", "Mars",
+                read.get(10, TimeUnit.SECONDS).get().getPlanet());
+
+        String content = mockMvc.perform(get("/rest/ships/1").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertEquals("Прочитанная до коммита версия попала в кэш второго уровня.",
+                "Pluto", mapper.readValue(content, ShipInfoTest.class).planet);
+    }
+
+    /**
+     * Останавливает загрузку корабля в заданном потоке после чтения строки из БД, до записи в кэш второго уровня
+     */
+    private static class PauseBeforeCachePut implements PreLoadEventListener {
+
+        private volatile Thread thread;
+        private final CountDownLatch loaded = new CountDownLatch(1);
+        private final CountDownLatch resume = new CountDownLatch(1);
+
+        private static volatile PauseBeforeCachePut current;
+
+        static synchronized PauseBeforeCachePut register(EntityManagerFactory emf) {
+            // Слушатель регистрируется в фабрике один раз, а для каждого теста подменяется только состояние
+            if (current == null) {
+                current = new PauseBeforeCachePut();
+                emf.unwrap(SessionFactoryImplementor.class).getServiceRegistry()
+                        .getService(EventListenerRegistry.class)
+                        .appendListeners(EventType.PRE_LOAD, event -> current.onPreLoad(event));
+            }
+            current = new PauseBeforeCachePut();
+            return current;
+        }
+
+        @Override
+        public void onPreLoad(PreLoadEvent event) {
+            if (Thread.currentThread() != thread)
+                return;
+            thread = null;
+            loaded.countDown();
+            try {
+                resume.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
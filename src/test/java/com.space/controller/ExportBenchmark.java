@@ -0,0 +1,107 @@
+package com.space.controller;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponseWrapper;
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Память полной выгрузки миллиона кораблей. Запускается профилем benchmark: mvn -Pbenchmark test.
+ * Ответ не копится: поток ответа только считает строки и каждые SAMPLE_EVERY строк после сборки мусора
+ * замеряет занятую кучу. Выгрузка, которая держит строки в контексте сохранения или в кэше JSON,
+ * растет вместе с числом выгруженных кораблей
+ */
+public class ExportBenchmark extends AbstractTest {
+
+    private static final int FLEET_SIZE = 1_000_000;
+    private static final int SAMPLE_EVERY = 100_000;
+    private static final long MAX_GROWTH = 32L << 20;
+
+    private ShipController controller;
+
+    @Before
+    public void setupFleet() {
+        new JdbcTemplate(context.getBean("primaryDataSource", DataSource.class)).update(
+                "insert into ship(name, planet, shipType, prodDate, isUsed, speed, crewSize, rating) " +
+                "select concat('Ship ', x), case mod(x, 4) when 0 then 'Mars' when 1 then 'Venus' " +
+                "when 2 then 'Earth' else 'Saturn' end, 'MERCHANT', '3000-01-01', false, " +
+                "mod(x, 99) / 100.0 + 0.01, mod(x, 9999) + 1, 1.0 from system_range(1, ?)", FLEET_SIZE);
+        controller = context.getBean(ShipController.class);
+    }
+
+    // Выгрузка не читает индексы и кэши, поэтому они не строятся заново: триграммный индекс миллиона имен
+    // сам занял бы большую часть кучи
+    @Override
+    public void setup() {
+    }
+
+    @Test
+    public void exportHeapStaysFlat() throws Exception {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        CountingResponse response = new CountingResponse(memory);
+        memory.gc();
+        long baseline = memory.getHeapMemoryUsage().getUsed();
+
+        long start = System.nanoTime();
+        controller.export(null, null, null, null, null, null, null, null, null, null, null, null,
+                ShipOrder.ID, ShipExportFormat.NDJSON, response);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long growth = response.maxUsed - baseline;
+        System.out.printf("ExportBenchmark: %d ships exported in %.1f s (%.0f ships/s), %d MB written, " +
+                        "heap after GC: baseline %d MB, max %d MB during export (%+d MB)%n",
+                response.lines, seconds, response.lines / seconds, response.bytes >> 20,
+                baseline >> 20, response.maxUsed >> 20, growth >> 20);
+        assertEquals("Выгрузка возвращает не все корабли.", FLEET_SIZE + 40, response.lines);
+        assertTrue("Занятая куча растет во время выгрузки.", growth < MAX_GROWTH);
+    }
+
+    /**
+     * Ответ, который не хранит тело, а считает строки и байты
+     */
+    private static class CountingResponse extends HttpServletResponseWrapper {
+
+        private final MemoryMXBean memory;
+        private long lines;
+        private long bytes;
+        private long maxUsed;
+
+        CountingResponse(MemoryMXBean memory) {
+            super(new MockHttpServletResponse());
+            this.memory = memory;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                    bytes++;
+                    if (b == '\n' && ++lines % SAMPLE_EVERY == 0) {
+                        memory.gc();
+                        maxUsed = Math.max(maxUsed, memory.getHeapMemoryUsage().getUsed());
+                    }
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener writeListener) {
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.space.controller.utils.ShipInfoTest;
+import com.space.controller.utils.TestsHelper;
+import com.space.model.ShipType;
+import com.space.service.ShipJsonCache;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class ExportTest extends AbstractTest {
+
+    private TestsHelper testsHelper = new TestsHelper();
+    private ObjectMapper mapper = new ObjectMapper();
+
+    //test1
+    @Test
+    public void exportNdjsonReturnsAllFilteredShips() throws Exception {
+        MockHttpServletResponse response = mockMvc.perform(get("/rest/ships/export?shipType=MILITARY&order=ID"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+
+        List<ShipInfoTest> actual = new ArrayList<>();
+        for (String line : response.getContentAsString().split("\n"))
+            actual.add(mapper.readValue(line, ShipInfoTest.class));
+        List<ShipInfoTest> expected = testsHelper.getShipInfosByOrder(ShipOrder.ID,
+                testsHelper.getShipInfosByShipType(ShipType.MILITARY, testsHelper.getAllShips()));
+
+        assertEquals("Возвращается не правильный тип содержимого при выгрузке NDJSON.",
+                "application/x-ndjson", response.getContentType());
+        assertEquals("Возвращается не правильный результат при выгрузке NDJSON.", expected, actual);
+    }
+
+    //test2
+    @Test
+    public void exportCsvReturnsHeaderAndRowPerShip() throws Exception {
+        String content = mockMvc.perform(get("/rest/ships/export?format=CSV&planet=ur"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = content.split("\n");
+        int expected = testsHelper.getShipInfosByPlanet("ur", testsHelper.getAllShips()).size();
+
+        assertEquals("Возвращается не правильный заголовок при выгрузке CSV.",
+                "id,name,planet,shipType,prodDate,isUsed,speed,crewSize,rating", lines[0]);
+        assertEquals("Возвращается не правильное количество строк при выгрузке CSV.", expected, lines.length - 1);
+    }
+
+    //test3
+    @Test
+    public void exportWithUnknownFormatReturnsBadRequest() throws Exception {
+        mockMvc.perform(get("/rest/ships/export?format=XML"))
+                .andExpect(status().isBadRequest());
+    }
+
+    //test4
+    @Test
+    public void exportBypassesJsonCache() throws Exception {
+        ShipJsonCache jsonCache = context.getBean(ShipJsonCache.class);
+        long misses = jsonCache.getMisses();
+
+        String content = mockMvc.perform(get("/rest/ships/export"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals("Выгрузка возвращает не все корабли.",
+                testsHelper.getAllShips().size(), content.split("\n").length);
+        assertEquals("Выгрузка заполняет кэш JSON.", 0, jsonCache.getSize());
+        assertEquals("Выгрузка обращается к кэшу JSON.", misses, jsonCache.getMisses());
+    }
+}
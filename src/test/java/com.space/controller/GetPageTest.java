@@ -0,0 +1,60 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.space.controller.utils.ShipInfoTest;
+import com.space.controller.utils.TestsHelper;
+import com.space.model.ShipType;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class GetPageTest extends AbstractTest {
+
+    private TestsHelper testsHelper = new TestsHelper();
+    private ObjectMapper mapper = new ObjectMapper();
+
+    //test1
+    @Test
+    public void getPageWithoutFiltersReturnsFirstPageAndTotal() throws Exception {
+        JsonNode page = readPage("/rest/ships/page");
+
+        List<ShipInfoTest> allShips = testsHelper.getAllShips();
+        assertEquals("Возвращается не правильная страница при запросе GET /rest/ships/page.",
+                testsHelper.getShipInfosByPage(0, 3, allShips), readItems(page));
+        assertEquals("Возвращается не правильное количество при запросе GET /rest/ships/page.",
+                allShips.size(), page.get("total").asInt());
+    }
+
+    //test2
+    @Test
+    public void getPageWithFiltersShipTypeOrderPageNumber() throws Exception {
+        JsonNode page = readPage("/rest/ships/page?shipType=TRANSPORT&order=SPEED&pageNumber=1&pageSize=2");
+
+        List<ShipInfoTest> filtered = testsHelper.getShipInfosByShipType(ShipType.TRANSPORT, testsHelper.getAllShips());
+        List<ShipInfoTest> expected = testsHelper.getShipInfosByPage(1, 2,
+                testsHelper.getShipInfosByOrder(ShipOrder.SPEED, filtered));
+        assertEquals("Возвращается не правильная страница при запросе GET /rest/ships/page с параметрами shipType, order и pageNumber.",
+                expected, readItems(page));
+        assertEquals("Возвращается не правильное количество при запросе GET /rest/ships/page с параметром shipType.",
+                filtered.size(), page.get("total").asInt());
+    }
+
+    private JsonNode readPage(String url) throws Exception {
+        String content = mockMvc.perform(get(url)
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return mapper.readTree(content);
+    }
+
+    private List<ShipInfoTest> readItems(JsonNode page) throws Exception {
+        return Arrays.asList(mapper.treeToValue(page.get("items"), ShipInfoTest[].class));
+    }
+}
@@ -0,0 +1,106 @@
+package com.space.controller;
+
+import com.space.model.Ship;
+import com.space.model.ShipType;
+import com.space.service.ShipGroupCommitter;
+import com.space.service.ShipService;
+import org.junit.Test;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Пропускная способность и задержка создания кораблей с групповой записью и с коммитом на каждый запрос.
+ * Запускается профилем benchmark: mvn -Pbenchmark test. Оба пути - настоящий ShipServiceImpl.save:
+ * без групповой записи сервис сохраняет корабль своей транзакцией, как вне профиля group-commit.
+ * Клиенты создают корабли без пауз; у H2 в памяти коммит не ждет fsync, поэтому выигрыш группы
+ * здесь меньше, чем на диске
+ */
+@ActiveProfiles({"dev", "group-commit"})
+public class GroupCommitBenchmark extends AbstractTest {
+
+    private static final int CLIENTS = 16;
+    private static final int WARMUP = 200;
+    private static final int CREATES_PER_CLIENT = 1_000;
+
+    private static final Date PROD_DATE = new GregorianCalendar(3000, 0, 1).getTime();
+
+    @Test
+    public void groupCommitVersusCommitPerRequest() throws Exception {
+        ShipService shipService = context.getBean(ShipService.class);
+        Object target = AopTestUtils.getUltimateTargetObject(shipService);
+        ShipGroupCommitter committer = context.getBean(ShipGroupCommitter.class);
+
+        ReflectionTestUtils.setField(target, "groupCommitter", null);
+        createShips(shipService, WARMUP);
+        Result alone = createShips(shipService, CREATES_PER_CLIENT);
+
+        ReflectionTestUtils.setField(target, "groupCommitter", committer);
+        createShips(shipService, WARMUP);
+        long commits = committer.getCommits();
+        long ships = committer.getShips();
+        Result grouped = createShips(shipService, CREATES_PER_CLIENT);
+        double batchSize = (double) (committer.getShips() - ships) / (committer.getCommits() - commits);
+
+        System.out.printf("GroupCommitBenchmark: %d clients, commit per request %.0f ships/s, p50 %.3f ms, " +
+                        "p99 %.3f ms; group commit %.0f ships/s, p50 %.3f ms, p99 %.3f ms, %.1f ships per commit%n",
+                CLIENTS, alone.throughput, alone.percentile(50), alone.percentile(99),
+                grouped.throughput, grouped.percentile(50), grouped.percentile(99), batchSize);
+    }
+
+    private Result createShips(ShipService shipService, int perClient) throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<long[]>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < CLIENTS; i++) {
+            int client = i;
+            results.add(clients.submit(() -> {
+                long[] latencies = new long[perClient];
+                for (int j = 0; j < perClient; j++) {
+                    Ship ship = new Ship("Bench " + client + "-" + j, "Mars", ShipType.MERCHANT, PROD_DATE,
+                            false, 0.5, 10);
+                    long started = System.nanoTime();
+                    assertNotNull("Корабль не создан.", shipService.save(ship));
+                    latencies[j] = System.nanoTime() - started;
+                }
+                return latencies;
+            }));
+        }
+        long[] all = new long[CLIENTS * perClient];
+        for (int i = 0; i < CLIENTS; i++)
+            System.arraycopy(results.get(i).get(), 0, all, i * perClient, perClient);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        clients.shutdown();
+        clients.awaitTermination(1, TimeUnit.MINUTES);
+        Arrays.sort(all);
+        return new Result(all, all.length / seconds);
+    }
+
+    private static class Result {
+
+        // Отсортированные задержки в наносекундах
+        private final long[] latencies;
+        private final double throughput;
+
+        Result(long[] latencies, double throughput) {
+            this.latencies = latencies;
+            this.throughput = throughput;
+        }
+
+        double percentile(int percent) {
+            return latencies[Math.min(latencies.length - 1, latencies.length * percent / 100)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.space.controller.utils.ShipInfoTest;
+import com.space.controller.utils.TestsHelper;
+import com.space.model.Ship;
+import com.space.model.ShipType;
+import com.space.service.ShipGroupCommitter;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.util.AssertionErrors.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ActiveProfiles({"dev", "group-commit"})
+public class GroupCommitTest extends AbstractTest {
+
+    private static final int SHIPS = 20;
+
+    private TestsHelper testsHelper = new TestsHelper();
+    private ObjectMapper mapper = new ObjectMapper();
+
+    //test1
+    @Test
+    public void createdShipIsReturnedWithId() throws Exception {
+        String response = mockMvc.perform(post("/rest/ships")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content(TestsHelper.NORMAL_JSON))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        ShipInfoTest created = mapper.readValue(response, ShipInfoTest.class);
+
+        assertTrue("Корабль, записанный группой, не получил id.", created.id != null);
+        String found = mockMvc.perform(get("/rest/ships/" + created.id)
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertEquals("Корабль, записанный группой, не находится по id.", created,
+                mapper.readValue(found, ShipInfoTest.class));
+    }
+
+    //test2
+    @Test
+    public void concurrentShipsShareCommits() throws Exception {
+        ShipGroupCommitter committer = context.getBean(ShipGroupCommitter.class);
+        long commits = committer.getCommits();
+
+        List<CompletableFuture<Ship>> results = new ArrayList<>();
+        for (int i = 0; i < SHIPS; i++)
+            results.add(committer.submit(newShip("Group " + i)));
+
+        Set<Long> ids = new HashSet<>();
+        for (CompletableFuture<Ship> result : results)
+            ids.add(result.get().getId());
+
+        assertEquals("Каждый корабль группы должен получить свой id.", SHIPS, ids.size());
+        assertTrue("Одновременные корабли не объединились в группы.", committer.getCommits() - commits < SHIPS);
+        assertEquals("Не все корабли группы записаны.", testsHelper.getAllShips().size() + SHIPS,
+                Integer.parseInt(mockMvc.perform(get("/rest/ships/count")
+                        .accept(MediaType.APPLICATION_JSON_UTF8))
+                        .andReturn().getResponse().getContentAsString()));
+    }
+
+    //test3
+    @Test
+    public void submitAfterStopFailsFast() throws Exception {
+        // Отдельный экземпляр: общий останавливать нельзя, он нужен другим тестам
+        ShipGroupCommitter committer = new ShipGroupCommitter();
+        ReflectionTestUtils.setField(committer, "environment", context.getEnvironment());
+        committer.afterPropertiesSet();
+        committer.destroy();
+
+        CompletableFuture<Ship> result = committer.submit(newShip("Late"));
+        assertTrue("Запись после остановки должна сразу завершаться.", result.isDone());
+        try {
+            result.get(1, TimeUnit.SECONDS);
+        } catch (CancellationException e) {
+            return;
+        }
+        throw new AssertionError("Запись после остановки должна отменяться.");
+    }
+
+    private static Ship newShip(String name) {
+        return new Ship(name, "Earth", ShipType.MILITARY, new Date(32998274577071L), false, 0.8, 14);
+    }
+}
@@ -0,0 +1,115 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.space.controller.utils.TestsHelper;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class ImportTest extends AbstractTest {
+
+    private TestsHelper testsHelper = new TestsHelper();
+    private ObjectMapper mapper = new ObjectMapper();
+
+    //test1
+    @Test
+    public void importNdjsonSavesValidRowsAndReportsBadOnes() throws Exception {
+        String body = TestsHelper.NORMAL_JSON.replace("123456789", "Import One") + "\n" +
+                TestsHelper.NO_SPEED_JSON + "\n" +
+                "{broken\n" +
+                TestsHelper.NORMAL_JSON_WITH_ID.replace("%s", "1").replace("123456789", "Import Two") + "\n";
+
+        JsonNode result = importShips("/rest/ships/import?batchSize=1", "application/x-ndjson", body);
+
+        assertEquals("Не правильное количество загруженных кораблей.", 2, result.get("imported").asInt());
+        assertEquals("Не правильное количество отклоненных строк.", 2, result.get("rejected").asInt());
+        assertEquals("Не правильный номер строки с ошибкой.", 2, result.get("errors").get(0).get("line").asInt());
+        assertEquals("Не правильный номер строки с ошибкой.", 3, result.get("errors").get(1).get("line").asInt());
+        assertEquals("Загруженные корабли не находятся по имени.", 2, readCount("/rest/ships/count?name=Import"));
+        assertEquals("Загрузка изменила существующий корабль.", 1,
+                readCount("/rest/ships/count?name=Orion"));
+    }
+
+    //test2
+    @Test
+    public void importCsvWithHeaderSavesShips() throws Exception {
+        String body = "name,planet,shipType,prodDate,isUsed,speed,crewSize\n" +
+                "\"Cargo, Heavy\",Earth,TRANSPORT,32998274577071,,0.5,100\n" +
+                "Scout,Mars,MILITARY,32998274577071,true,0.9,2\n";
+
+        JsonNode result = importShips("/rest/ships/import", "text/csv", body);
+
+        assertEquals("Не правильное количество загруженных кораблей.", 2, result.get("imported").asInt());
+        assertEquals("Не правильное количество кораблей после загрузки.",
+                testsHelper.getAllShips().size() + 2, readCount("/rest/ships/count"));
+        assertEquals("Корабль с запятой в имени загружен не правильно.", 1,
+                readCount("/rest/ships/count?name=Cargo, Heavy"));
+    }
+
+    //test3
+    @Test
+    public void databaseErrorRejectsOnlyFailedRow() throws Exception {
+        new JdbcTemplate(context.getBean("primaryDataSource", DataSource.class))
+                .execute("alter table ship add constraint ship_no_pluto check (planet <> 'Pluto')");
+        String body = TestsHelper.NORMAL_JSON.replace("123456789", "Import One") + "\n" +
+                TestsHelper.NORMAL_JSON.replace("123456789", "Import Two").replace("Earth", "Pluto") + "\n" +
+                TestsHelper.NORMAL_JSON.replace("123456789", "Import Three") + "\n";
+
+        JsonNode result = importShips("/rest/ships/import", "application/x-ndjson", body);
+
+        assertEquals("Ошибка БД в одной строке отклонила всю порцию.", 2, result.get("imported").asInt());
+        assertEquals("Не правильное количество отклоненных строк.", 1, result.get("rejected").asInt());
+        assertEquals("Не правильный номер строки с ошибкой БД.", 2,
+                result.get("errors").get(0).get("line").asInt());
+        assertEquals("Сохраненные корабли не находятся по имени.", 2, readCount("/rest/ships/count?name=Import"));
+    }
+
+    //test4
+    @Test
+    public void csvExportWithLineBreaksImportsBack() throws Exception {
+        String name = "Round trip\r\nsecond \"line\", end";
+        mockMvc.perform(post("/rest/ships/")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content(TestsHelper.NORMAL_JSON.replace("123456789", "Round trip\\r\\nsecond \\\"line\\\", end")))
+                .andExpect(status().isOk());
+        String exported = mockMvc.perform(get("/rest/ships/export?format=CSV&name=Round trip"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        // Строка после многострочной записи разбирается как отдельный корабль
+        JsonNode result = importShips("/rest/ships/import", "text/csv",
+                exported + ",Scout,Mars,MILITARY,32998274577071,true,0.9,2,\n");
+
+        assertEquals("Не правильное количество загруженных кораблей.", 2, result.get("imported").asInt());
+        assertEquals("Не правильное количество отклоненных строк.", 0, result.get("rejected").asInt());
+        assertEquals("Многострочное имя не сохранилось при выгрузке и загрузке.", 2,
+                new JdbcTemplate(context.getBean("primaryDataSource", DataSource.class))
+                        .queryForObject("select count(*) from ship where name = ?", Integer.class, name));
+    }
+
+    private JsonNode importShips(String url, String contentType, String body) throws Exception {
+        String content = mockMvc.perform(post(url)
+                .contentType(contentType)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content(body))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return mapper.readTree(content);
+    }
+
+    private int readCount(String url) throws Exception {
+        return Integer.parseInt(mockMvc.perform(get(url)
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+    }
+}
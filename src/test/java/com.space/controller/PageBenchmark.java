@@ -0,0 +1,77 @@
+package com.space.controller;
+
+import com.space.service.ShipQueryCache;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Сравнение GET /rest/ships/page с двумя последовательными запросами GET /rest/ships и /rest/ships/count.
+ * Запускается профилем benchmark: mvn -Pbenchmark test. Кэш выдачи сбрасывается перед каждым запросом,
+ * иначе сравнивались бы попадания в кэш
+ */
+public class PageBenchmark extends AbstractTest {
+
+    private static final int FLEET_SIZE = 50_000;
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 100;
+
+    private static final String FILTER = "?planet=Mars&minSpeed=0.1&order=SPEED&pageSize=20";
+
+    private ShipQueryCache queryCache;
+
+    @Before
+    public void setupFleet() {
+        new JdbcTemplate(context.getBean("primaryDataSource", DataSource.class)).update(
+                "insert into ship(name, planet, shipType, prodDate, isUsed, speed, crewSize, rating) " +
+                "select concat('Ship ', x), case mod(x, 4) when 0 then 'Mars' when 1 then 'Venus' " +
+                "when 2 then 'Earth' else 'Saturn' end, 'MERCHANT', '3000-01-01', false, " +
+                "mod(x, 99) / 100.0 + 0.01, mod(x, 9999) + 1, 1.0 from system_range(1, ?)", FLEET_SIZE);
+        queryCache = context.getBean(ShipQueryCache.class);
+        setup();
+    }
+
+    @Test
+    public void pageVersusListAndCount() throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            listAndCount();
+            page();
+        }
+        long sequential = measure(this::listAndCount);
+        long combined = measure(this::page);
+        System.out.printf("PageBenchmark: %d ships, /rest/ships + /count %.2f ms/op, /page %.2f ms/op%n",
+                FLEET_SIZE, sequential / 1e6, combined / 1e6);
+    }
+
+    private void listAndCount() throws Exception {
+        queryCache.invalidate();
+        perform("/rest/ships" + FILTER);
+        perform("/rest/ships/count" + FILTER);
+    }
+
+    private void page() throws Exception {
+        queryCache.invalidate();
+        perform("/rest/ships/page" + FILTER);
+    }
+
+    private void perform(String url) throws Exception {
+        mockMvc.perform(get(url).accept(MediaType.APPLICATION_JSON_UTF8)).andExpect(status().isOk());
+    }
+
+    private long measure(Operation operation) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++)
+            operation.run();
+        return (System.nanoTime() - start) / ITERATIONS;
+    }
+
+    private interface Operation {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,72 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.space.config.ConnectionPoolMetrics;
+import com.space.controller.utils.TestsHelper;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Одновременные загрузки на пуле из двух соединений: каждой порции не хватает одного блока id,
+ * а новый блок генератор берет на втором соединении пула
+ */
+@TestPropertySource(properties = {"db.pool.maxSize=2", "db.pool.connectionTimeout=1000"})
+public class ParallelImportTest extends AbstractTest {
+
+    private static final int IMPORTS = 4;
+    private static final int SHIPS_PER_IMPORT = 250;
+
+    private TestsHelper testsHelper = new TestsHelper();
+    private ObjectMapper mapper = new ObjectMapper();
+
+    //test1
+    @Test
+    public void parallelImportsDoNotExhaustPool() throws Exception {
+        ConnectionPoolMetrics metrics = context.getBean(ConnectionPoolMetrics.class);
+        long timeouts = metrics.getTimeouts();
+
+        ExecutorService clients = Executors.newFixedThreadPool(IMPORTS);
+        List<Future<Integer>> imported = new ArrayList<>();
+        for (int i = 0; i < IMPORTS; i++) {
+            String body = body(i);
+            imported.add(clients.submit(() -> mapper.readTree(mockMvc.perform(
+                    post("/rest/ships/import?batchSize=" + SHIPS_PER_IMPORT)
+                            .contentType("application/x-ndjson")
+                            .accept(MediaType.APPLICATION_JSON_UTF8)
+                            .content(body))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString()).get("imported").asInt()));
+        }
+        int total = 0;
+        for (Future<Integer> result : imported)
+            total += result.get();
+        clients.shutdown();
+
+        assertEquals("Загружены не все корабли.", IMPORTS * SHIPS_PER_IMPORT, total);
+        assertEquals("Загрузки ждали соединение дольше таймаута пула.", timeouts, metrics.getTimeouts());
+        assertEquals("Не правильное количество кораблей после загрузки.",
+                testsHelper.getAllShips().size() + IMPORTS * SHIPS_PER_IMPORT,
+                Integer.parseInt(mockMvc.perform(get("/rest/ships/count").accept(MediaType.APPLICATION_JSON_UTF8))
+                        .andExpect(status().isOk())
+                        .andReturn().getResponse().getContentAsString()));
+    }
+
+    private static String body(int client) {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < SHIPS_PER_IMPORT; i++)
+            body.append(TestsHelper.NORMAL_JSON.replace("123456789", "Parallel " + client + "-" + i)).append('\n');
+        return body.toString();
+    }
+}
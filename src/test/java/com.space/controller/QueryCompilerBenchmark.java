@@ -0,0 +1,112 @@
+package com.space.controller;
+
+import com.space.model.Ship;
+import com.space.service.ShipDTO;
+import com.space.service.ShipQueryCompiler;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.function.BiFunction;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Стоимость планирования запроса выдачи: {@link ShipQueryCompiler} (JPQL, собранный один раз на форму фильтра,
+ * значения параметрами) против прежнего пути, строившего дерево Criteria с подставленными значениями на каждый запрос.
+ * Запускается профилем benchmark: mvn -Pbenchmark test. Значения фильтра меняются от запроса к запросу,
+ * как у разных клиентов, поэтому у прежнего пути меняется и текст SQL. Замеряется отдельно построение запроса
+ * (до выполнения) и построение вместе с выполнением
+ */
+public class QueryCompilerBenchmark extends AbstractTest {
+
+    private static final int FLEET_SIZE = 10_000;
+    private static final int WARMUP = 2_000;
+    private static final int ITERATIONS = 10_000;
+    private static final int PAGE_SIZE = 20;
+
+    private EntityManagerFactory emf;
+    private ShipQueryCompiler compiler;
+    private TransactionTemplate transaction;
+
+    @Before
+    public void setupFleet() {
+        new JdbcTemplate(context.getBean("primaryDataSource", DataSource.class)).update(
+                "insert into ship(name, planet, shipType, prodDate, isUsed, speed, crewSize, rating) " +
+                "select concat('Ship ', x), case mod(x, 4) when 0 then 'Mars' when 1 then 'Venus' " +
+                "when 2 then 'Earth' else 'Saturn' end, 'MERCHANT', '3000-01-01', false, " +
+                "mod(x, 99) / 100.0 + 0.01, mod(x, 9999) + 1, 1.0 from system_range(1, ?)", FLEET_SIZE);
+        emf = context.getBean(EntityManagerFactory.class);
+        compiler = context.getBean(ShipQueryCompiler.class);
+        transaction = context.getBean("readOnlyTransaction", TransactionTemplate.class);
+        setup();
+    }
+
+    @Test
+    public void compilerVersusCriteria() {
+        BiFunction<EntityManager, ShipDTO, TypedQuery<Ship>> compiled = (em, shipDTO) -> compiler.select(shipDTO);
+        BiFunction<EntityManager, ShipDTO, TypedQuery<Ship>> criteria = QueryCompilerBenchmark::criteriaQuery;
+
+        for (BiFunction<EntityManager, ShipDTO, TypedQuery<Ship>> path : Arrays.asList(compiled, criteria)) {
+            run(path, WARMUP, false);
+            run(path, WARMUP, true);
+        }
+        double compiledPlan = run(compiled, ITERATIONS, false);
+        double criteriaPlan = run(criteria, ITERATIONS, false);
+        double compiledTotal = run(compiled, ITERATIONS, true);
+        double criteriaTotal = run(criteria, ITERATIONS, true);
+        System.out.printf("QueryCompilerBenchmark: %d ships, build query: compiler %.1f us/op, criteria %.1f us/op; " +
+                        "build and execute: compiler %.1f us/op, criteria %.1f us/op%n",
+                FLEET_SIZE, compiledPlan, criteriaPlan, compiledTotal, criteriaTotal);
+    }
+
+    /**
+     * @return Среднее время запроса в микросекундах
+     */
+    private double run(BiFunction<EntityManager, ShipDTO, TypedQuery<Ship>> path, int iterations, boolean execute) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            ShipDTO shipDTO = filter(i);
+            boolean found = transaction.execute(status -> {
+                EntityManager em = EntityManagerFactoryUtils.getTransactionalEntityManager(emf);
+                TypedQuery<Ship> query = path.apply(em, shipDTO).setMaxResults(PAGE_SIZE);
+                return !execute || !query.getResultList().isEmpty();
+            });
+            assertTrue("Выдача пуста.", found);
+        }
+        return (System.nanoTime() - start) / 1e3 / iterations;
+    }
+
+    private static ShipDTO filter(int i) {
+        return new ShipDTO(null, "Mars", null, null, null, null, i % 50 / 100.0, null, null, 5000 + i % 5000,
+                null, null, 0, PAGE_SIZE, ShipOrder.SPEED);
+    }
+
+    /**
+     * Прежний путь ShipServiceImpl: новое дерево Criteria на каждый запрос, значения подставлены в условия
+     */
+    private static TypedQuery<Ship> criteriaQuery(EntityManager em, ShipDTO shipDTO) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Ship> cq = cb.createQuery(Ship.class);
+        Root<Ship> root = cq.from(Ship.class);
+
+        Predicate p = cb.conjunction();
+        p = cb.and(p, cb.like(root.get("planet"), "%" + shipDTO.getPlanet() + "%"));
+        p = cb.and(p, cb.greaterThanOrEqualTo(root.get("speed"), shipDTO.getMinSpeed()));
+        p = cb.and(p, cb.lessThanOrEqualTo(root.get("crewSize"), shipDTO.getMaxCrewSize()));
+        cq.where(p);
+        cq.orderBy(cb.asc(root.get(shipDTO.getOrderBy().getFieldName())));
+        return em.createQuery(cq);
+    }
+}
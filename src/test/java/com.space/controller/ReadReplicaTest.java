@@ -0,0 +1,124 @@
+package com.space.controller;
+
+import com.space.config.ReadYourWritesInterceptor;
+import com.space.config.ReplicaRoutingDataSource;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import javax.servlet.http.Cookie;
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.util.AssertionErrors.assertNotNull;
+import static org.springframework.test.util.AssertionErrors.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Основная БД и реплика - две независимые БД H2, изменения между ними не переносятся,
+ * поэтому по содержимому ответа видно, с какой БД он прочитан
+ */
+@ActiveProfiles({"dev", "replica"})
+public class ReadReplicaTest extends AbstractTest {
+
+    private JdbcTemplate primary;
+    private JdbcTemplate replica;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setupReplica() {
+        DataSource replicaDataSource = ((List<DataSource>) context.getBean("replicaDataSources")).get(0);
+        new ResourceDatabasePopulator(new ClassPathResource("test.sql")).execute(replicaDataSource);
+        replica = new JdbcTemplate(replicaDataSource);
+        primary = new JdbcTemplate(context.getBean("primaryDataSource", DataSource.class));
+    }
+
+    //test1
+    @Test
+    public void readsAreServedByReplica() throws Exception {
+        ReplicaRoutingDataSource routing = context.getBean(ReplicaRoutingDataSource.class);
+        long replicaConnections = routing.getReplicaConnections();
+        replica.update("delete from ship where planet = 'Mars'");
+
+        assertEquals("Количество кораблей прочитано не с реплики.", "0",
+                read(get("/rest/ships/count?planet=Mars")));
+        mockMvc.perform(get("/rest/ships/1").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isNotFound());
+        assertTrue("Чтение не получало соединений реплики.", routing.getReplicaConnections() > replicaConnections);
+    }
+
+    //test2
+    @Test
+    public void writesGoToPrimary() throws Exception {
+        mockMvc.perform(post("/rest/ships/1")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"planet\": \"Pluto\"}"))
+                .andExpect(status().isOk());
+
+        assertEquals("Изменение не записано в основную БД.", "Pluto",
+                primary.queryForObject("select planet from ship where id = 1", String.class));
+        assertEquals("Изменение записано в реплику.", "Mars",
+                replica.queryForObject("select planet from ship where id = 1", String.class));
+    }
+
+    //test3
+    @Test
+    public void clientReadsOwnWritesFromPrimary() throws Exception {
+        MockHttpServletResponse response = mockMvc.perform(post("/rest/ships/1")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"planet\": \"Pluto\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        Cookie primaryUntil = response.getCookie(ReadYourWritesInterceptor.PRIMARY_UNTIL_COOKIE);
+        assertNotNull("Изменяющий запрос не выдал cookie для чтения своих записей.", primaryUntil);
+
+        assertEquals("Клиент без cookie должен читать с реплики.", "0",
+                read(get("/rest/ships/count?planet=Pluto")));
+        assertEquals("Клиент не видит своего изменения.", "1",
+                read(get("/rest/ships/count?planet=Pluto").cookie(primaryUntil)));
+    }
+
+    //test4
+    @Test
+    public void cookieBeyondWindowIsIgnored() throws Exception {
+        primary.update("update ship set planet = 'Pluto' where id = 1");
+        Cookie forged = new Cookie(ReadYourWritesInterceptor.PRIMARY_UNTIL_COOKIE, String.valueOf(Long.MAX_VALUE));
+
+        assertEquals("Cookie со сроком дальше окна не должна направлять чтение на основную БД.", "0",
+                read(get("/rest/ships/count?planet=Pluto").cookie(forged)));
+    }
+
+    //test5
+    @Test
+    public void laggingReplicaDoesNotFillEntityCache() throws Exception {
+        // Реплика еще не получила изменение: клиент без cookie читает прежнюю версию корабля
+        MockHttpServletResponse response = mockMvc.perform(post("/rest/ships/1")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"planet\": \"Pluto\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        Cookie primaryUntil = response.getCookie(ReadYourWritesInterceptor.PRIMARY_UNTIL_COOKIE);
+
+        assertTrue("Корабль прочитан не с реплики.", read(get("/rest/ships/1")).contains("\"Mars\""));
+        assertTrue("Прочитанная с реплики версия попала в кэш второго уровня.",
+                read(get("/rest/ships/1").cookie(primaryUntil)).contains("\"Pluto\""));
+    }
+
+    private String read(MockHttpServletRequestBuilder request) throws Exception {
+        return mockMvc.perform(request.accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+    }
+}
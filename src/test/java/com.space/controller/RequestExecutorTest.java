@@ -0,0 +1,135 @@
+package com.space.controller;
+
+import com.space.config.RequestExecutor;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertFalse;
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.util.AssertionErrors.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class RequestExecutorTest extends AbstractTest {
+
+    //test1
+    @Test
+    public void readIsServedByRequestExecutor() throws Exception {
+        RequestExecutor executor = context.getBean(RequestExecutor.class);
+        long completed = executor.getCompleted();
+
+        mockMvc.perform(get("/rest/ships/count").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (executor.getCompleted() == completed && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertTrue("Запрос чтения выполнен не в пуле запросов.", executor.getCompleted() > completed);
+    }
+
+    //test2
+    @Test
+    public void overloadedExecutorReturnsServiceUnavailable() throws Exception {
+        RequestExecutor executor = context.getBean(RequestExecutor.class);
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Void>> blockers = new ArrayList<>();
+        try {
+            // Сначала занимаем все потоки пула, затем всю его очередь
+            for (int i = 0; i < executor.getMaxThreads(); i++)
+                blockers.add(executor.submit(() -> await(release)));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (executor.getActiveThreads() < executor.getMaxThreads() && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+            while (executor.getQueueSize() < executor.getQueueCapacity())
+                blockers.add(executor.submit(() -> await(release)));
+            long rejected = executor.getRejected();
+
+            mockMvc.perform(get("/rest/ships/1").accept(MediaType.APPLICATION_JSON_UTF8))
+                    .andExpect(status().isServiceUnavailable());
+            assertEquals("Отклоненный запрос не учтен.", rejected + 1, executor.getRejected());
+        } finally {
+            release.countDown();
+            CompletableFuture.allOf(blockers.toArray(new CompletableFuture[0])).get();
+        }
+    }
+
+    //test3
+    @Test
+    public void expiredTaskIsNotExecuted() throws Exception {
+        RequestExecutor executor = new RequestExecutor(1, 1, 50);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            executor.submit(() -> await(release));
+            AtomicBoolean executed = new AtomicBoolean();
+            CompletableFuture<Boolean> queued = executor.submit(() -> executed.getAndSet(true));
+
+            // Задача пролежала в очереди дольше таймаута
+            Thread.sleep(100);
+            release.countDown();
+
+            try {
+                queued.get();
+                assertTrue("Просроченная задача завершилась успешно.", false);
+            } catch (ExecutionException e) {
+                assertTrue("Просроченная задача завершилась не таймаутом.", e.getCause() instanceof TimeoutException);
+            }
+            assertFalse("Просроченная задача была выполнена.", executed.get());
+            assertEquals("Просроченная задача не учтена.", 1L, executor.getExpired());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    //test4
+    @Test
+    public void perTaskLauncherIsBoundedByPermits() throws Exception {
+        // Кэшированный пул запускает каждую задачу сразу, как исполнитель виртуальных потоков
+        RequestExecutor executor = new RequestExecutor(2, 1, 5000, Executors.newCachedThreadPool());
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        try {
+            for (int i = 0; i < 3; i++)
+                tasks.add(executor.submit(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    await(release);
+                    running.decrementAndGet();
+                    return null;
+                }));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (executor.getActiveThreads() < 2 && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+            assertEquals("Ожидающая задача не учтена в очереди.", 1, executor.getQueueSize());
+
+            CompletableFuture<Void> overflow = executor.submit(() -> null);
+            assertTrue("Задача сверх очереди не отклонена.", overflow.isCompletedExceptionally());
+            assertEquals("Отклоненная задача не учтена.", 1L, executor.getRejected());
+        } finally {
+            release.countDown();
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).get();
+            executor.shutdown();
+        }
+        assertEquals("Одновременно выполнялось больше задач, чем разрешений.", 2, maxRunning.get());
+        assertEquals("Выполненные задачи не учтены.", 3L, executor.getCompleted());
+    }
+
+    private static Void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,68 @@
+package com.space.controller;
+
+import com.space.controller.utils.TestsHelper;
+import com.space.service.ShipQueryCache;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Страница из 10 кораблей и больше уже не помещается в кэш
+@TestPropertySource(properties = "ship.queryCache.maxWeight=10")
+public class ResultCacheTest extends AbstractTest {
+
+    private TestsHelper testsHelper = new TestsHelper();
+
+    //test1
+    @Test
+    public void repeatedCountIsServedFromCache() throws Exception {
+        ShipQueryCache cache = context.getBean(ShipQueryCache.class);
+        long hits = cache.getHits();
+        long misses = cache.getMisses();
+
+        // Пустая строка и отсутствующий параметр дают один и тот же ключ
+        readCount("/rest/ships/count?planet=Mars");
+        readCount("/rest/ships/count?planet=Mars&name=");
+
+        assertEquals("Повторный запрос количества не попал в кэш.", hits + 1, cache.getHits());
+        assertEquals("Первый запрос количества должен быть промахом.", misses + 1, cache.getMisses());
+    }
+
+    //test2
+    @Test
+    public void deleteInvalidatesCachedCount() throws Exception {
+        int expected = testsHelper.getAllShips().size();
+        assertEquals("Возвращается не правильное количество.", expected, readCount("/rest/ships/count"));
+
+        mockMvc.perform(delete("/rest/ships/1")
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk());
+
+        assertEquals("После удаления корабля возвращается устаревшее количество из кэша.",
+                expected - 1, readCount("/rest/ships/count"));
+    }
+
+    //test3
+    @Test
+    public void resultOverMaxWeightIsNotCached() throws Exception {
+        ShipQueryCache cache = context.getBean(ShipQueryCache.class);
+        assertEquals("Предел кэша не взят из свойства.", 10, cache.getMaxWeight());
+
+        for (int i = 0; i < 2; i++)
+            mockMvc.perform(get("/rest/ships?pageSize=20")
+                    .accept(MediaType.APPLICATION_JSON_UTF8))
+                    .andExpect(status().isOk());
+        assertEquals("Страница тяжелее предела попала в кэш.", 0, cache.getWeight());
+    }
+
+    private int readCount(String url) throws Exception {
+        return Integer.parseInt(mockMvc.perform(get(url)
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+    }
+}
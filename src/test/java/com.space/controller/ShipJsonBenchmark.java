@@ -0,0 +1,83 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.space.model.Ship;
+import com.space.model.ShipType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Стоимость кодирования страницы кораблей в JSON: кодек ShipJson с кэшем JSON (как в ответах),
+ * без кэша (как в выгрузке) и Jackson по полям класса, которого кодек заменил.
+ * Запускается профилем benchmark: mvn -Pbenchmark test. Страница одна и та же, поэтому с кэшем
+ * корабли берутся из него, как у часто читаемых кораблей
+ */
+public class ShipJsonBenchmark extends AbstractTest {
+
+    private static final int PAGE_SIZE = 20;
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 100_000;
+
+    private static final Date PROD_DATE = new GregorianCalendar(3000, 0, 1).getTime();
+
+    /**
+     * Убирает с Ship аннотации кодека: Jackson строит сериализатор по полям, как до ShipJson
+     */
+    @JsonSerialize(using = JsonSerializer.None.class)
+    @JsonDeserialize(using = JsonDeserializer.None.class)
+    private static abstract class ReflectiveShip {
+    }
+
+    @Test
+    public void codecWithAndWithoutCacheVersusReflection() throws Exception {
+        ObjectMapper cached = context.getBean("objectMapper", ObjectMapper.class);
+        ObjectMapper uncached = cached.copy();
+        uncached.setHandlerInstantiator(null);
+        ObjectMapper reflective = uncached.copy();
+        reflective.addMixIn(Ship.class, ReflectiveShip.class);
+
+        List<Ship> page = new ArrayList<>();
+        for (long id = 1; id <= PAGE_SIZE; id++)
+            page.add(new Ship(id, "Ship " + id, "Planet " + id % 4, ShipType.values()[(int) id % 3], PROD_DATE,
+                    id % 2 == 0, 0.5 + id / 100.0, (int) id * 10, 0.4 + id / 100.0, id));
+
+        byte[] expected = reflective.writeValueAsBytes(page);
+        assertArrayEquals("Кодек без кэша пишет не тот JSON.", expected, uncached.writeValueAsBytes(page));
+        assertArrayEquals("Кодек с кэшем пишет не тот JSON.", expected, cached.writeValueAsBytes(page));
+
+        for (ObjectMapper mapper : new ObjectMapper[]{reflective, uncached, cached})
+            run(mapper, page, WARMUP);
+        double reflection = run(reflective, page, ITERATIONS);
+        double codec = run(uncached, page, ITERATIONS);
+        double codecCached = run(cached, page, ITERATIONS);
+
+        System.out.printf("ShipJsonBenchmark: page of %d ships (%d bytes), field reflection %.0f ns/ship, " +
+                        "ShipJson without cache %.0f ns/ship, ShipJson with cache %.0f ns/ship%n",
+                PAGE_SIZE, expected.length, reflection, codec, codecCached);
+    }
+
+    /**
+     * @return Среднее время кодирования одного корабля в наносекундах
+     */
+    private static double run(ObjectMapper mapper, List<Ship> page, int iterations) throws Exception {
+        long bytes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            bytes += mapper.writeValueAsBytes(page).length;
+        double perShip = (double) (System.nanoTime() - start) / iterations / page.size();
+        // Результат используется, чтобы JIT не выбросил кодирование
+        if (bytes == 0)
+            throw new IllegalStateException();
+        return perShip;
+    }
+}
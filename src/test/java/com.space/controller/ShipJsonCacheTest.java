@@ -0,0 +1,63 @@
+package com.space.controller;
+
+import com.space.service.ShipJsonCache;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.util.AssertionErrors.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@TestPropertySource(properties = "ship.jsonCache.maxBytes=4000")
+public class ShipJsonCacheTest extends AbstractTest {
+
+    private String getJson(String url) throws Exception {
+        return mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+    }
+
+    //test1
+    @Test
+    public void repeatedListIsServedFromCache() throws Exception {
+        ShipJsonCache jsonCache = context.getBean(ShipJsonCache.class);
+        String first = getJson("/rest/ships?pageSize=3");
+        long hits = jsonCache.getHits();
+
+        String second = getJson("/rest/ships?pageSize=3");
+        assertEquals("Повторная выдача отличается от первой.", first, second);
+        assertEquals("Повторная выдача должна взять JSON всех трех кораблей из кэша.", hits + 3, jsonCache.getHits());
+        assertTrue("JSON корабля из кэша должен совпадать с ответом по id.",
+                first.contains(getJson("/rest/ships/" + first.replaceFirst("^\\[\\{\"id\":(\\d+),.*", "$1"))));
+    }
+
+    //test2
+    @Test
+    public void updatedShipIsNotServedFromCache() throws Exception {
+        String before = getJson("/rest/ships/1");
+
+        mockMvc.perform(post("/rest/ships/1")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"name\":\"Обновленный\"}"))
+                .andExpect(status().isOk());
+
+        String after = getJson("/rest/ships/1");
+        assertTrue("После изменения отдан прежний JSON: " + after,
+                !before.equals(after) && after.contains("\"name\":\"Обновленный\""));
+    }
+
+    //test3
+    @Test
+    public void cacheStaysWithinMemoryBound() throws Exception {
+        ShipJsonCache jsonCache = context.getBean(ShipJsonCache.class);
+        getJson("/rest/ships?pageSize=40");
+
+        assertTrue("Кэш превысил ограничение памяти: " + jsonCache.getBytes(),
+                jsonCache.getBytes() <= jsonCache.getMaxBytes());
+        assertTrue("При переполнении кэш должен вытеснять записи.", jsonCache.getEvictions() > 0);
+        assertTrue("Кэш не должен опустеть после вытеснения.", jsonCache.getSize() > 0);
+    }
+}
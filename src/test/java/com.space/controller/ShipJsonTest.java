@@ -0,0 +1,84 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.space.controller.utils.TestsHelper;
+import com.space.model.Ship;
+import com.space.model.ShipType;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class ShipJsonTest extends AbstractTest {
+
+    private static final List<String> SHIP_JSON = Arrays.asList(
+            "{\"id\":7,\"name\":\"Orion\",\"planet\":\"Mars\",\"shipType\":\"MERCHANT\",\"prodDate\":32998274577071," +
+                    "\"isUsed\":true,\"speed\":0.57,\"crewSize\":14,\"rating\":1.27,\"version\":3,\"unknown\":[1]}",
+            "{\"name\":\"\",\"planet\":null,\"speed\":\"0.5\",\"crewSize\":\"14\",\"isUsed\":\"false\"," +
+                    "\"prodDate\":\"32998274577071\",\"shipType\":1}",
+            "{\"name\":\"Кириллица \\\"в кавычках\\\"\",\"speed\":5,\"crewSize\":14.0,\"rating\":\"\"," +
+                    "\"prodDate\":\"3019-01-01T00:00:00.000+0000\"}",
+            "{}");
+
+    /**
+     * Прежняя настройка: Jackson по полям класса, без кодека Ship
+     */
+    @JsonSerialize(using = JsonSerializer.None.class)
+    @JsonDeserialize(using = JsonDeserializer.None.class)
+    private abstract static class ReflectiveShip {
+    }
+
+    private final ObjectMapper reflective = Jackson2ObjectMapperBuilder.json()
+            .mixIn(Ship.class, ReflectiveShip.class)
+            .visibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE)
+            .visibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
+            .build();
+
+    //test1
+    @Test
+    public void codecWritesSameJsonAsReflectiveMapper() throws Exception {
+        ObjectMapper objectMapper = context.getBean(ObjectMapper.class);
+        List<Ship> ships = Arrays.asList(
+                new Ship(7L, "Orion", "Mars", ShipType.MERCHANT, new Date(32998274577071L), true, 0.57, 14, 1.27, 3L),
+                new Ship(null, null, null, null, null, null, null, null, null),
+                new Ship(1L, "Кириллица \"в кавычках\"\n", "Земля", ShipType.MILITARY, new Date(0), false,
+                        0.1, 9999, 0.0));
+
+        assertEquals("Кодек пишет JSON, отличный от прежнего.",
+                reflective.writeValueAsString(ships), objectMapper.writeValueAsString(ships));
+    }
+
+    //test2
+    @Test
+    public void codecReadsSameShipsAsReflectiveMapper() throws Exception {
+        ObjectMapper objectMapper = context.getBean(ObjectMapper.class);
+        for (String json : SHIP_JSON) {
+            Ship expected = reflective.readValue(json, Ship.class);
+            Ship actual = objectMapper.readValue(json, Ship.class);
+            assertEquals("Кодек разбирает JSON иначе, чем прежде: " + json,
+                    reflective.writeValueAsString(expected), reflective.writeValueAsString(actual));
+        }
+    }
+
+    //test3
+    @Test
+    public void unknownShipTypeIsBadRequest() throws Exception {
+        mockMvc.perform(post("/rest/ships")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content(TestsHelper.NORMAL_JSON.replace("MILITARY", "FLAGSHIP")))
+                .andExpect(status().isBadRequest());
+    }
+}
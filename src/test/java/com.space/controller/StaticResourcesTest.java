@@ -0,0 +1,48 @@
+package com.space.controller;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.resource.ResourceUrlProvider;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.util.AssertionErrors.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class StaticResourcesTest extends AbstractTest {
+
+    private static final String SCRIPTS = "/resources/scripts.js";
+
+    //test1
+    @Test
+    public void fingerprintedResourceIsCachedForever() throws Exception {
+        String url = context.getBean(ResourceUrlProvider.class).getForLookupPath(SCRIPTS);
+        assertTrue("Адрес ресурса не содержит хеш содержимого: " + url,
+                url != null && url.matches("/resources/scripts-[0-9a-f]{32}\\.js"));
+
+        MockHttpServletResponse response = mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        assertEquals("Ресурс с хешем должен кэшироваться на год без перепроверки.",
+                "max-age=31536000, public, immutable", response.getHeader("Cache-Control"));
+    }
+
+    //test2
+    @Test
+    public void plainResourceIsRevalidated() throws Exception {
+        MockHttpServletResponse response = mockMvc.perform(get(SCRIPTS))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        assertEquals("Ресурс без хеша должен перепроверяться.", "no-cache", response.getHeader("Cache-Control"));
+    }
+
+    //test3
+    @Test
+    public void staleFingerprintIsNotFound() throws Exception {
+        MockHttpServletResponse response = mockMvc.perform(get("/resources/scripts-00000000000000000000000000000000.js"))
+                .andExpect(status().isNotFound())
+                .andReturn().getResponse();
+        assertEquals("Ответ 404 на устаревший хеш не должен кэшироваться надолго.", "no-cache",
+                response.getHeader("Cache-Control"));
+    }
+}
@@ -0,0 +1,107 @@
+package com.space.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.space.controller.utils.ShipInfoTest;
+import com.space.controller.utils.TestsHelper;
+import com.space.service.ShipDTO;
+import com.space.service.ShipTrigramIndex;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class SubstringFilterTest extends AbstractTest {
+
+    private TestsHelper testsHelper = new TestsHelper();
+    private ObjectMapper mapper = new ObjectMapper();
+    private TypeReference<List<ShipInfoTest>> typeReference = new TypeReference<List<ShipInfoTest>>() {
+    };
+
+    //test1
+    @Test
+    public void nameAndPlanetSubstringsMatchLike() throws Exception {
+        List<ShipInfoTest> expected = testsHelper.getShipInfosByPlanet("atur",
+                testsHelper.getShipInfosByName("ero", testsHelper.getAllShips()));
+
+        assertEquals("Возвращается не правильный результат при поиске по подстрокам name и planet.",
+                expected, readShips("/rest/ships?name=ero&planet=atur&pageSize=50"));
+    }
+
+    //test2
+    @Test
+    public void substringInOtherCaseMatchesLike() throws Exception {
+        List<ShipInfoTest> expected = testsHelper.getShipInfosByName("exc", testsHelper.getAllShips());
+
+        assertEquals("Возвращается не правильный результат при поиске по подстроке name в другом регистре.",
+                expected, readShips("/rest/ships?name=exc&pageSize=50"));
+    }
+
+    //test3
+    @Test
+    public void missingSubstringReturnsNothing() throws Exception {
+        assertEquals("Возвращается не правильный результат при поиске по отсутствующей подстроке.",
+                "0", mockMvc.perform(get("/rest/ships/count?name=zzz")
+                        .accept(MediaType.APPLICATION_JSON_UTF8))
+                        .andExpect(status().isOk())
+                        .andReturn().getResponse().getContentAsString());
+    }
+
+    //test4
+    @Test
+    public void substringFilterFollowsUpdateAndDelete() throws Exception {
+        mockMvc.perform(post("/rest/ships/2")
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"name\": \"Quasar Wing\"}"))
+                .andExpect(status().isOk());
+
+        List<ShipInfoTest> updated = readShips("/rest/ships?name=uasar");
+        assertEquals("Корабль не находится по новому имени после обновления.", 1, updated.size());
+        assertEquals("Корабль не находится по новому имени после обновления.", 2L, updated.get(0).id);
+        assertEquals("Корабль находится по старому имени после обновления.",
+                0, readShips("/rest/ships?name=Daedal").size());
+
+        mockMvc.perform(delete("/rest/ships/2")
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk());
+        assertEquals("Корабль находится по имени после удаления.",
+                0, readShips("/rest/ships?name=uasar").size());
+    }
+
+    //test5
+    @Test
+    public void searchDuringRebuildSeesWholeIndex() throws Exception {
+        ShipTrigramIndex index = context.getBean(ShipTrigramIndex.class);
+        ShipDTO byName = new ShipDTO("Orion", null, null, null, null, null, null, null, null, null, null, null,
+                null, null, null);
+        AtomicBoolean rebuilding = new AtomicBoolean(true);
+        Thread rebuilder = new Thread(() -> {
+            for (int i = 0; i < 50; i++)
+                index.rebuild();
+            rebuilding.set(false);
+        });
+        rebuilder.start();
+
+        while (rebuilding.get())
+            assertEquals("Во время перестроения индекс не находит корабль.",
+                    Collections.singleton(1L), index.candidates(byName));
+        rebuilder.join();
+    }
+
+    private List<ShipInfoTest> readShips(String url) throws Exception {
+        String content = mockMvc.perform(get(url)
+                .accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return mapper.readValue(content, typeReference);
+    }
+}
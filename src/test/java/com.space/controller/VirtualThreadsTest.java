@@ -0,0 +1,43 @@
+package com.space.controller;
+
+import com.space.config.RequestExecutor;
+import com.space.config.VirtualThreads;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.springframework.test.util.AssertionErrors.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@TestPropertySource(properties = "threads.virtual=true")
+public class VirtualThreadsTest extends AbstractTest {
+
+    //test1
+    @Test
+    public void requestExecutorUsesVirtualThreadsWhenAvailable() throws Exception {
+        RequestExecutor executor = context.getBean(RequestExecutor.class);
+        boolean virtual = executor.submit(() -> isVirtual(Thread.currentThread())).get();
+
+        // На JDK без виртуальных потоков режим не включается, а пул остается рабочим
+        assertEquals("Поток пула запросов не соответствует режиму threads.virtual.",
+                VirtualThreads.isAvailable(), virtual);
+    }
+
+    //test2
+    @Test
+    public void readsAreServedInVirtualThreadMode() throws Exception {
+        mockMvc.perform(get("/rest/ships/page?pageSize=5").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/rest/ships/1").accept(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk());
+    }
+
+    private static boolean isVirtual(Thread thread) {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.space.service;
+
+import com.space.controller.ShipOrder;
+import com.space.model.Ship;
+import com.space.model.ShipType;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.persistence.EntityManager;
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Проверяет текст запросов по формам фильтра и подстановку параметров без БД:
+ * EntityManager подменяется заглушкой, которая запоминает текст запроса и параметры
+ */
+public class ShipQueryCompilerTest {
+
+    private static final String SELECT = "select new com.space.model.Ship(s.id, s.name, s.planet, s.shipType, " +
+            "s.prodDate, s.isUsed, s.speed, s.crewSize, s.rating, s.version) from ship s";
+
+    private ShipQueryCompiler compiler;
+    private ShipTrigramIndex trigramIndex;
+
+    private String jpql;
+    private Map<String, Object> parameters;
+
+    @Before
+    public void setup() {
+        trigramIndex = new ShipTrigramIndex();
+        compiler = new ShipQueryCompiler();
+        ReflectionTestUtils.setField(compiler, "em", recordingEntityManager());
+        ReflectionTestUtils.setField(compiler, "trigramIndex", trigramIndex);
+    }
+
+    //test1
+    @Test
+    public void selectWithoutFiltersHasNoConditions() {
+        compiler.select(new ShipDTO());
+
+        assertEquals("Запрос без фильтров не должен содержать условий.", SELECT, jpql);
+        assertEquals("Запрос без фильтров не должен содержать параметров.", Collections.emptyMap(), parameters);
+    }
+
+    //test2
+    @Test
+    public void everyFilterAddsItsConditionAndParameter() {
+        // Строки короче триграммы индекс не сужает, поэтому условия на id нет
+        ShipDTO shipDTO = new ShipDTO("Or", "Ma", ShipType.MILITARY, 1000L, 2000L, true, 0.1, 0.9,
+                10, 100, 1.5, 2.5, null, null, null);
+        compiler.select(shipDTO);
+
+        assertEquals("Не правильный текст запроса со всеми фильтрами.", SELECT + " where s.name like :name" +
+                " and s.planet like :planet and s.shipType = :shipType and s.prodDate >= :after" +
+                " and s.prodDate <= :before and s.isUsed = :isUsed and s.speed >= :minSpeed" +
+                " and s.speed <= :maxSpeed and s.crewSize >= :minCrewSize and s.crewSize <= :maxCrewSize" +
+                " and s.rating >= :minRating and s.rating <= :maxRating", jpql);
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("name", "%Or%");
+        expected.put("planet", "%Ma%");
+        expected.put("shipType", ShipType.MILITARY);
+        expected.put("after", new java.sql.Date(1000L));
+        expected.put("before", new java.sql.Date(2000L));
+        expected.put("isUsed", true);
+        expected.put("minSpeed", 0.1);
+        expected.put("maxSpeed", 0.9);
+        expected.put("minCrewSize", 10);
+        expected.put("maxCrewSize", 100);
+        expected.put("minRating", 1.5);
+        expected.put("maxRating", 2.5);
+        assertEquals("Не правильные параметры запроса со всеми фильтрами.", expected, parameters);
+    }
+
+    //test3
+    @Test
+    public void emptyStringFiltersAreIgnored() {
+        compiler.select(new ShipDTO("", "", null, null, null, null, null, null, null, null, null, null,
+                null, null, null));
+
+        assertEquals("Пустые строки фильтра не должны давать условий.", SELECT, jpql);
+    }
+
+    //test4
+    @Test
+    public void trigramCandidatesNarrowSubstringFilter() {
+        trigramIndex.put(new Ship(7L, "Orion III", "Mars", null, null, null, null, null, null));
+        compiler.select(nameFilter("Orion"));
+
+        assertEquals("Кандидаты индекса должны добавлять условие на id.",
+                SELECT + " where s.name like :name and s.id in :ids", jpql);
+        assertEquals("Не правильный список кандидатов.", Collections.singleton(7L), parameters.get("ids"));
+
+        compiler.select(nameFilter("Vorlon"));
+        assertEquals("Пустой список кандидатов заменяется несуществующим id.",
+                Collections.singleton(0L), parameters.get("ids"));
+    }
+
+    //test5
+    @Test
+    public void orderAndKeysetShapes() {
+        ShipDTO bySpeed = new ShipDTO(null, null, null, null, null, null, null, null, null, null, null, null,
+                null, null, ShipOrder.SPEED);
+
+        compiler.select(bySpeed);
+        assertEquals("Не правильная сортировка постраничной выдачи.", SELECT + " order by s.speed", jpql);
+
+        compiler.selectAfter(bySpeed, null);
+        assertEquals("Первая страница по ключу сортируется по полю и id.", SELECT + " order by s.speed, s.id", jpql);
+
+        Ship last = new Ship(5L, null, null, null, null, null, 0.5, null, null);
+        compiler.selectAfter(bySpeed, ShipCursor.after(last, ShipOrder.SPEED));
+        assertEquals("Не правильное условие продолжения после курсора.", SELECT +
+                " where (s.speed > :sortKey or (s.speed = :sortKey and s.id > :lastId)) order by s.speed, s.id", jpql);
+        assertEquals("Не подставлено значение поля курсора.", 0.5, parameters.get("sortKey"));
+        assertEquals("Не подставлен id курсора.", 5L, parameters.get("lastId"));
+
+        compiler.selectAfter(new ShipDTO(), ShipCursor.after(last, ShipOrder.ID));
+        assertEquals("Выдача по id продолжается только по id.", SELECT + " where s.id > :lastId order by s.id", jpql);
+        assertEquals("При сортировке по id значение поля не подставляется.", Collections.singleton("lastId"),
+                parameters.keySet());
+    }
+
+    //test6
+    @Test
+    public void countAndSelectIdsShapes() {
+        ShipDTO shipDTO = new ShipDTO(null, null, ShipType.TRANSPORT, null, null, null, null, null, null, null,
+                null, null, 2, 10, ShipOrder.RATING);
+
+        compiler.count(shipDTO);
+        assertEquals("Количество не сортируется и не зависит от страницы.",
+                "select count(s) from ship s where s.shipType = :shipType", jpql);
+
+        compiler.selectIds(shipDTO);
+        assertEquals("Не правильный запрос id.", "select s.id from ship s where s.shipType = :shipType", jpql);
+        assertEquals("Не подставлен параметр фильтра.", ShipType.TRANSPORT, parameters.get("shipType"));
+    }
+
+    //test7
+    @Test
+    public void updateAssignsPatchAndRecalculatesRating() {
+        ShipDTO shipDTO = new ShipDTO(null, null, null, null, null, true, null, null, null, null, null, null,
+                null, null, null);
+
+        compiler.update(shipDTO, new Ship(null, "Mars", null, null, null, null, null));
+        assertEquals("Не правильный запрос обновления без полей рейтинга.",
+                "update ship s set s.version = s.version + 1, s.changeSeq = :changeSeq, s.planet = :newPlanet, " +
+                        "s.rating = round(80.0 * s.speed * (case when s.isUsed = true then 0.5 else 1.0 end) / " +
+                        "(3019 - year(s.prodDate) + 1), 2) where s.isUsed = :isUsed", jpql);
+
+        Calendar prodDate = new GregorianCalendar(3000, Calendar.JANUARY, 1);
+        compiler.update(shipDTO, new Ship(null, null, null, prodDate.getTime(), false, 0.5, null));
+        assertEquals("Рейтинг должен пересчитываться по новым значениям полей.",
+                "update ship s set s.version = s.version + 1, s.changeSeq = :changeSeq, " +
+                        "s.prodDate = :newProdDate, s.isUsed = :newIsUsed, s.speed = :newSpeed, " +
+                        "s.rating = round(80.0 * :newSpeed * :newUsedFactor / (3019 - :newProdYear + 1), 2) " +
+                        "where s.isUsed = :isUsed", jpql);
+        assertEquals("Не подставлен множитель рейтинга.", 1.0, parameters.get("newUsedFactor"));
+        assertEquals("Не подставлен год выпуска.", 3000, parameters.get("newProdYear"));
+        assertEquals("Не подставлен фильтр.", true, parameters.get("isUsed"));
+    }
+
+    //test8
+    @Test
+    public void queryTextIsCompiledOncePerShape() {
+        compiler.select(new ShipDTO("Or", null, null, null, null, null, 0.1, null, null, null, null, null,
+                null, null, null));
+        String first = jpql;
+        compiler.select(new ShipDTO("He", null, null, null, null, null, 0.7, null, null, null, null, null,
+                0, 5, null));
+
+        assertSame("Запрос той же формы должен браться из кэша.", first, jpql);
+        assertEquals("Значения фильтра должны подставляться параметрами.", "%He%", parameters.get("name"));
+
+        compiler.count(new ShipDTO("Or", null, null, null, null, null, 0.1, null, null, null, null, null,
+                null, null, null));
+        Map<?, ?> compiled = (Map<?, ?>) ReflectionTestUtils.getField(compiler, "compiled");
+        assertEquals("Каждая форма запроса должна компилироваться один раз.", 2, compiled.size());
+    }
+
+    private static ShipDTO nameFilter(String name) {
+        return new ShipDTO(name, null, null, null, null, null, null, null, null, null, null, null,
+                null, null, null);
+    }
+
+    private EntityManager recordingEntityManager() {
+        return (EntityManager) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{EntityManager.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("createQuery") || !(args[0] instanceof String))
+                        throw new UnsupportedOperationException(method.getName());
+                    jpql = (String) args[0];
+                    parameters = new HashMap<>();
+                    return recordingQuery(method.getReturnType());
+                });
+    }
+
+    private Object recordingQuery(Class<?> type) {
+        return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    if (!method.getName().equals("setParameter") || !(args[0] instanceof String))
+                        throw new UnsupportedOperationException(method.getName());
+                    parameters.put((String) args[0], args[1]);
+                    return proxy;
+                });
+    }
+}